@@ -0,0 +1,594 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/***
+ * Micro benchmarks for the custom data structures and the feed paths, compared against the java.util classes.
+ * Every benchmark builds its input from a fixed seed, runs warmup iterations before the measured ones and reports the
+ * mean, deviation and minimum time per operation. Small batches are repeated within an iteration, so every iteration
+ * lasts long enough to be timed reliably. Results can be saved to a CSV file and a later run compared with
+ * them, so a change to one of these classes can be checked against a baseline.
+ * Usage: java -cp out Benchmarks [name filter] [--save=results.csv] [--compare=baseline.csv]
+ */
+public class Benchmarks {
+    private static final long SEED = 42;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final long WARMUP_NANOS = 1_000_000_000L; // minimum warmup time
+    private static final long ITERATION_NANOS = 50_000_000L; // minimum time of a measured iteration
+    private static final int[] MAP_SIZES = {1_000, 65_536, 1_000_000};
+    private static final int QUEUE_SIZE = 100_000;
+    private static final int SMALL_MAPS = 10_000; // maps created at once, like the post maps of new users
+    private static final int FAN_OUT_THRESHOLD = 100; // followers from which posts are merged when feeds are read
+    private static final int AUTHOR_POSTS = 50_000; // posts of the author seen at once by see_all_posts_from_user
+    private static final int LIKE_UPDATES = 10_000; // like changes per batch of the ranking benchmarks
+
+    private static volatile long sink; // results are added here so the JIT cannot drop the measured work
+
+    private String filter;
+    private List<String> results = new ArrayList<>(); // CSV lines of name, mean and deviation in ns per operation
+    private HashMap<String, Double> baseline = new HashMap<>();
+
+    /***
+     * An operation to be measured. One call of run does a whole batch of operations.
+     */
+    private interface Batch {
+        /***
+         * Runs one batch of operations.
+         * @return A value depending on the work done, fed to the sink.
+         * @throws IOException If an I/O error occurs.
+         */
+        long run() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException{
+        Benchmarks benchmarks = new Benchmarks();
+        String saveName = null;
+        for (String arg : args){
+            if (arg.startsWith("--save=")){
+                saveName = arg.substring("--save=".length());
+            } else if (arg.startsWith("--compare=")){
+                for (String line : Files.readAllLines(Paths.get(arg.substring("--compare=".length())))){
+                    String[] fields = line.split(",");
+                    benchmarks.baseline.put(fields[0], Double.parseDouble(fields[1]));
+                }
+            } else {
+                benchmarks.filter = arg;
+            }
+        }
+        System.out.println("Java " + System.getProperty("java.version") + ", seed " + SEED + ", at least "
+                + WARMUP_ITERATIONS + " warmup and " + MEASURED_ITERATIONS + " measured iterations");
+        System.out.printf("%-40s %12s %10s %12s %10s%n", "benchmark", "ns/op", "+-", "min ns/op", "vs base");
+
+        for (int size : MAP_SIZES){
+            benchmarks.mapBenchmarks(size);
+        }
+        benchmarks.smallMapBenchmarks(0);
+        benchmarks.smallMapBenchmarks(3);
+        benchmarks.queueBenchmarks();
+        benchmarks.seeAllBenchmarks();
+        benchmarks.rankingBenchmarks(AUTHOR_POSTS);
+        benchmarks.rankingBenchmarks(1_000);
+        benchmarks.feedBenchmarks(2_000, 50_000);
+        benchmarks.feedBenchmarks(20_000, 500_000);
+
+        if (saveName != null){
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(saveName)))){
+                for (String line : benchmarks.results){
+                    writer.println(line);
+                }
+            }
+        }
+    }
+
+    /***
+     * Measures a batch of operations and prints the time per operation.
+     * @param name The name of the benchmark.
+     * @param operations The number of operations in one batch.
+     * @param batch The batch to be measured.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void measure(String name, int operations, Batch batch) throws IOException{
+        if (filter != null && !name.contains(filter)){
+            return;
+        }
+        long warmupStart = System.nanoTime();
+        for (int i = 0; i < WARMUP_ITERATIONS || System.nanoTime() - warmupStart < WARMUP_NANOS; i++){
+            sink += batch.run();
+        }
+        double[] times = new double[MEASURED_ITERATIONS];
+        for (int i = 0; i < MEASURED_ITERATIONS; i++){
+            long start = System.nanoTime();
+            long elapsed;
+            int batches = 0;
+            do {
+                sink += batch.run();
+                batches++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ITERATION_NANOS);
+            times[i] = (double) elapsed / batches / operations;
+        }
+        double mean = 0;
+        double min = Double.MAX_VALUE;
+        for (double time : times){
+            mean += time / times.length;
+            min = Math.min(min, time);
+        }
+        double variance = 0;
+        for (double time : times){
+            variance += (time - mean) * (time - mean) / (times.length - 1);
+        }
+        double deviation = Math.sqrt(variance);
+        String versus = baseline.containsKey(name)
+                ? String.format("%+9.1f%%", (mean / baseline.get(name) - 1) * 100) : "";
+        System.out.printf("%-40s %12.1f %10.1f %12.1f %10s%n", name, mean, deviation, min, versus);
+        results.add(name + "," + mean + "," + deviation);
+    }
+
+    /***
+     * Creates distinct keys in a random order.
+     * @param size The number of keys.
+     * @param random The random source.
+     * @return The shuffled keys.
+     */
+    private static Integer[] shuffledKeys(int size, Random random){
+        Integer[] keys = new Integer[size];
+        for (int i = 0; i < size; i++){
+            keys[i] = i * 7; // spread like handles of every seventh ID
+        }
+        for (int i = size - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            Integer swap = keys[i];
+            keys[i] = keys[j];
+            keys[j] = swap;
+        }
+        return keys;
+    }
+
+    /***
+     * Benchmarks creating many maps holding a few entries each, as most users have only a few posts, with MyHashMap and
+     * HashMap. The maps are kept until the batch ends, so their memory counts as for maps kept by users.
+     * @param entries The number of entries put into each map.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void smallMapBenchmarks(int entries) throws IOException{
+        Integer[] keys = shuffledKeys(entries, new Random(SEED));
+        measure("MyHashMap.new+put/" + entries, SMALL_MAPS, () -> {
+            Object[] maps = new Object[SMALL_MAPS];
+            for (int i = 0; i < SMALL_MAPS; i++){
+                MyHashMap<Integer, Integer> map = new MyHashMap<>(10);
+                for (Integer key : keys){
+                    map.put(key, key);
+                }
+                maps[i] = map;
+            }
+            return maps.length;
+        });
+        measure("HashMap.new+put/" + entries, SMALL_MAPS, () -> {
+            Object[] maps = new Object[SMALL_MAPS];
+            for (int i = 0; i < SMALL_MAPS; i++){
+                HashMap<Integer, Integer> map = new HashMap<>();
+                for (Integer key : keys){
+                    map.put(key, key);
+                }
+                maps[i] = map;
+            }
+            return maps.length;
+        });
+    }
+
+    /***
+     * Benchmarks put, get, containsKey and remove of MyHashMap and HashMap at one size.
+     * @param size The number of keys in the maps.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void mapBenchmarks(int size) throws IOException{
+        Random random = new Random(SEED);
+        Integer[] keys = shuffledKeys(size, random);
+        Integer[] misses = new Integer[size]; // keys that are never put
+        for (int i = 0; i < size; i++){
+            misses[i] = keys[i] + 1;
+        }
+        MyHashMap<Integer, Integer> myMap = new MyHashMap<>(10);
+        HashMap<Integer, Integer> map = new HashMap<>();
+        for (Integer key : keys){
+            myMap.put(key, key);
+            map.put(key, key);
+        }
+
+        measure("MyHashMap.put/" + size, size, () -> {
+            MyHashMap<Integer, Integer> fresh = new MyHashMap<>(10);
+            for (Integer key : keys){
+                fresh.put(key, key);
+            }
+            return fresh.get(keys[0]);
+        });
+        measure("HashMap.put/" + size, size, () -> {
+            HashMap<Integer, Integer> fresh = new HashMap<>();
+            for (Integer key : keys){
+                fresh.put(key, key);
+            }
+            return fresh.get(keys[0]);
+        });
+        measure("MyHashMap.get/" + size, size, () -> {
+            long sum = 0;
+            for (Integer key : keys){
+                sum += myMap.get(key);
+            }
+            return sum;
+        });
+        measure("HashMap.get/" + size, size, () -> {
+            long sum = 0;
+            for (Integer key : keys){
+                sum += map.get(key);
+            }
+            return sum;
+        });
+        measure("MyHashMap.containsKey(miss)/" + size, size, () -> {
+            long found = 0;
+            for (Integer key : misses){
+                found += myMap.containsKey(key) ? 1 : 0;
+            }
+            return found;
+        });
+        measure("HashMap.containsKey(miss)/" + size, size, () -> {
+            long found = 0;
+            for (Integer key : misses){
+                found += map.containsKey(key) ? 1 : 0;
+            }
+            return found;
+        });
+        measure("MyHashMap.values/" + size, size, () -> {
+            long sum = 0;
+            for (Integer value : myMap.values()){
+                sum += value;
+            }
+            return sum;
+        });
+        measure("MyHashMap.forEachValue/" + size, size, () -> {
+            long[] sum = {0};
+            myMap.forEachValue(value -> sum[0] += value);
+            return sum[0];
+        });
+        measure("MyHashMap.put+remove/" + size, size, () -> {
+            MyHashMap<Integer, Integer> fresh = new MyHashMap<>(10);
+            for (Integer key : keys){
+                fresh.put(key, key);
+            }
+            for (Integer key : keys){
+                fresh.remove(key);
+            }
+            return fresh.containsKey(keys[0]) ? 1 : 0;
+        });
+        measure("HashMap.put+remove/" + size, size, () -> {
+            HashMap<Integer, Integer> fresh = new HashMap<>();
+            for (Integer key : keys){
+                fresh.put(key, key);
+            }
+            for (Integer key : keys){
+                fresh.remove(key);
+            }
+            return fresh.containsKey(keys[0]) ? 1 : 0;
+        });
+    }
+
+    /***
+     * Benchmarks adding and polling all elements of MyPriorityQueue and PriorityQueue.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void queueBenchmarks() throws IOException{
+        Integer[] values = shuffledKeys(QUEUE_SIZE, new Random(SEED));
+        measure("MyPriorityQueue.add+poll/" + QUEUE_SIZE, QUEUE_SIZE, () -> {
+            MyPriorityQueue<Integer> queue = new MyPriorityQueue<>(10);
+            for (Integer value : values){
+                queue.add(value);
+            }
+            long sum = 0;
+            while (!queue.isEmpty()){
+                sum += queue.poll();
+            }
+            return sum;
+        });
+        measure("PriorityQueue.add+poll/" + QUEUE_SIZE, QUEUE_SIZE, () -> {
+            PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> b.compareTo(a)); // a max-heap like ours
+            for (Integer value : values){
+                queue.add(value);
+            }
+            long sum = 0;
+            while (!queue.isEmpty()){
+                sum += queue.poll();
+            }
+            return sum;
+        });
+    }
+
+    /***
+     * Benchmarks marking all posts of a prolific author as seen, in bulk and post by post.
+     * Every batch uses a new viewer, so every post is unseen at first. Viewer handles cycle through a few values, so
+     * the viewers recorded by the posts stay small.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void seeAllBenchmarks() throws IOException{
+        Platform platform = new Platform(10);
+        User author = new User(platform.getUserIds().intern("author"), "author");
+        platform.addUser(author);
+        for (int i = 0; i < AUTHOR_POSTS; i++){
+            String postID = String.format("post%08d", i);
+            platform.addPost(author.createPost(platform.getPostIds().intern(postID), postID, "content" + i));
+        }
+        int[] viewerHandle = {0};
+        int handleMask = 63;
+        measure("seeAll(bulk)/" + AUTHOR_POSTS, AUTHOR_POSTS, () -> {
+            User viewer = new User(viewerHandle[0]++ & handleMask, "viewer");
+            viewer.addSeenAll(author);
+            viewer.addSeenAll(author); // seeing the same author again
+            return viewer.getSeenPosts().size();
+        });
+        measure("seeAll(per post)/" + AUTHOR_POSTS, AUTHOR_POSTS, () -> {
+            User viewer = new User(viewerHandle[0]++ & handleMask, "viewer");
+            for (int round = 0; round < 2; round++){
+                author.forEachPost(viewer::addSeen);
+            }
+            return viewer.getSeenPosts().size();
+        });
+    }
+
+    /***
+     * An element of the ranking benchmarks, ordered like a post by its likes and then by its ID.
+     */
+    private static class Ranked implements Comparable<Ranked> {
+        String id;
+        int likes;
+        int position; // index in the indexed heap
+
+        Ranked(String id){
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Ranked other){
+            return likes != other.likes ? Integer.compare(likes, other.likes) : id.compareTo(other.id);
+        }
+    }
+
+    /***
+     * A max-heap that keeps the position of every element, so the element can be moved after its key changed.
+     */
+    private static class IndexedHeap {
+        private Ranked[] heap;
+        private Ranked[] scratch; // copy drained for a ranking, so the heap itself is kept
+        private int size;
+
+        IndexedHeap(int capacity){
+            heap = new Ranked[capacity];
+            scratch = new Ranked[capacity];
+        }
+
+        void add(Ranked item){
+            heap[size] = item;
+            item.position = size;
+            siftUp(size++);
+        }
+
+        /***
+         * Moves an element to its place after its key changed, in O(log n).
+         * @param item The element whose key changed.
+         */
+        void updateKey(Ranked item){
+            siftUp(item.position);
+            siftDown(item.position);
+        }
+
+        private void siftUp(int index){
+            Ranked item = heap[index];
+            while (index > 0 && heap[(index - 1) / 2].compareTo(item) < 0){
+                heap[index] = heap[(index - 1) / 2];
+                heap[index].position = index;
+                index = (index - 1) / 2;
+            }
+            heap[index] = item;
+            item.position = index;
+        }
+
+        private void siftDown(int index){
+            Ranked item = heap[index];
+            int child;
+            while ((child = 2 * index + 1) < size){
+                if (child + 1 < size && heap[child + 1].compareTo(heap[child]) > 0){
+                    child++;
+                }
+                if (heap[child].compareTo(item) <= 0){
+                    break;
+                }
+                heap[index] = heap[child];
+                heap[index].position = index;
+                index = child;
+            }
+            heap[index] = item;
+            item.position = index;
+        }
+
+        /***
+         * Gets all elements in descending order, as sort_posts needs them, by draining a copy of the heap.
+         * @param action The action taking the elements in order.
+         */
+        void forEachRanked(Consumer<Ranked> action){
+            System.arraycopy(heap, 0, scratch, 0, size);
+            for (int n = size; n > 0; n--){
+                action.accept(scratch[0]);
+                Ranked last = scratch[n - 1];
+                int index = 0;
+                int child;
+                while ((child = 2 * index + 1) < n - 1){
+                    if (child + 1 < n - 1 && scratch[child + 1].compareTo(scratch[child]) > 0){
+                        child++;
+                    }
+                    if (scratch[child].compareTo(last) <= 0){
+                        break;
+                    }
+                    scratch[index] = scratch[child];
+                    index = child;
+                }
+                scratch[index] = last;
+            }
+        }
+    }
+
+    /***
+     * Benchmarks keeping the posts of an author ranked while their likes change by one, and reading the whole ranking
+     * as sort_posts does, with the sorted list the users keep and with an indexed heap. Likes are toggled by a few
+     * users on random posts, so most posts share a like count and a sorted list has to shift long runs of ties.
+     * @param postCount The number of posts of the author.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void rankingBenchmarks(int postCount) throws IOException{
+        Random random = new Random(SEED);
+        Ranked[] listed = new Ranked[postCount];
+        Ranked[] heaped = new Ranked[postCount];
+        MySortedList<Ranked> list = new MySortedList<>(postCount);
+        IndexedHeap heap = new IndexedHeap(postCount);
+        for (int i = 0; i < postCount; i++){
+            String id = String.format("post%08d", i);
+            listed[i] = new Ranked(id);
+            heaped[i] = new Ranked(id);
+            list.add(listed[i]);
+            heap.add(heaped[i]);
+        }
+        int[] updates = new int[LIKE_UPDATES];
+        boolean[] increments = new boolean[LIKE_UPDATES];
+        int[] likes = new int[postCount];
+        for (int i = 0; i < updates.length; i++){
+            updates[i] = random.nextInt(postCount);
+            increments[i] = likes[updates[i]] == 0 || random.nextBoolean();
+            likes[updates[i]] += increments[i] ? 1 : -1;
+        }
+
+        String scale = "/" + postCount;
+        measure("like(sorted list)" + scale, 2 * updates.length, () -> {
+            for (int round = 0; round < 2; round++){ // the second round undoes the first one
+                for (int i = 0; i < updates.length; i++){
+                    Ranked item = listed[updates[i]];
+                    int index = list.indexOf(item);
+                    item.likes += increments[i] == (round == 0) ? 1 : -1;
+                    list.reposition(index);
+                }
+            }
+            return list.get(0).likes;
+        });
+        measure("like(indexed heap)" + scale, 2 * updates.length, () -> {
+            for (int round = 0; round < 2; round++){
+                for (int i = 0; i < updates.length; i++){
+                    Ranked item = heaped[updates[i]];
+                    item.likes += increments[i] == (round == 0) ? 1 : -1;
+                    heap.updateKey(item);
+                }
+            }
+            return heap.heap[0].likes;
+        });
+        long[] sum = {0};
+        measure("ranking(sorted list)" + scale, postCount, () -> {
+            for (int i = 0; i < list.size(); i++){
+                sum[0] += list.get(i).likes;
+            }
+            return sum[0];
+        });
+        measure("ranking(indexed heap)" + scale, postCount, () -> {
+            heap.forEachRanked(item -> sum[0] += item.likes);
+            return sum[0];
+        });
+    }
+
+    /***
+     * Benchmarks generate_feed and sort_posts on a synthetic platform whose follows, posts and likes are skewed,
+     * so a few users have many followers and many posts. generate_feed is measured again with hybrid delivery.
+     * @param userCount The number of users.
+     * @param postCount The number of posts.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void feedBenchmarks(int userCount, int postCount) throws IOException{
+        Random random = new Random(SEED);
+        Platform platform = new Platform(userCount);
+        User[] users = new User[userCount];
+        for (int i = 0; i < userCount; i++){
+            String userID = String.format("user%08d", i);
+            users[i] = new User(platform.getUserIds().intern(userID), userID);
+            platform.addUser(users[i]);
+        }
+        for (int i = 0; i < userCount * 20; i++){
+            User follower = users[random.nextInt(userCount)];
+            User followed = users[WorkloadGenerator.powerLaw(random, userCount, 3)];
+            if (follower != followed){
+                follower.follow(followed);
+            }
+        }
+        Post[] posts = new Post[postCount];
+        for (int i = 0; i < postCount; i++){
+            String postID = String.format("post%08d", i);
+            User author = users[WorkloadGenerator.powerLaw(random, userCount, 2)];
+            posts[i] = author.createPost(platform.getPostIds().intern(postID), postID, "content" + i);
+            platform.addPost(posts[i]);
+        }
+        for (int i = 0; i < postCount * 5; i++){
+            posts[WorkloadGenerator.powerLaw(random, postCount, 3)].like(users[random.nextInt(userCount)]);
+        }
+        for (int i = 0; i < postCount * 2; i++){
+            users[random.nextInt(userCount)].addSeen(posts[random.nextInt(postCount)]);
+        }
+
+        int[] readers = new int[1000];
+        int[] authors = new int[1000]; // drawn like the authors of posts, so users with many posts are sorted more
+        for (int i = 0; i < readers.length; i++){
+            readers[i] = random.nextInt(userCount);
+            authors[i] = WorkloadGenerator.powerLaw(random, userCount, 2);
+        }
+        String scale = "/" + userCount + "u" + postCount + "p";
+        measure("getFeed(10)" + scale, readers.length, () -> {
+            long size = 0;
+            for (int reader : readers){
+                size += users[reader].getFeed(10).size();
+            }
+            return size;
+        });
+        measure("getFeed(100)" + scale, readers.length, () -> {
+            long size = 0;
+            for (int reader : readers){
+                size += users[reader].getFeed(100).size();
+            }
+            return size;
+        });
+        Command command = new Command();
+        command.type = Command.SORT_POSTS;
+        LogBuffer output = new LogBuffer();
+        measure("sort_posts" + scale, authors.length, () -> {
+            for (int author : authors){
+                output.clear();
+                command.userHandle = users[author].getHandle();
+                Main.execute(platform, command, output);
+            }
+            return authors.length;
+        });
+
+        platform.enableFanOut(FAN_OUT_THRESHOLD);
+        measure("getFeed(10),fanout" + scale, readers.length, () -> {
+            long size = 0;
+            for (int reader : readers){
+                size += users[reader].getFeed(10).size();
+            }
+            return size;
+        });
+        measure("getFeed(100),fanout" + scale, readers.length, () -> {
+            long size = 0;
+            for (int reader : readers){
+                size += users[reader].getFeed(100).size();
+            }
+            return size;
+        });
+    }
+}
@@ -0,0 +1,319 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/***
+ * Generates input files of any size with the command mix of one of the sample inputs type1_small to type4_small.
+ * Followed users, post authors and liked posts follow power laws, so a few users and posts get most of the activity,
+ * and a share of the commands uses unknown IDs or repeats earlier ones to hit the error paths like the samples do.
+ * The same profile, size and seed always give the same file.
+ * Usage: java -cp out WorkloadGenerator type1|type2|type3|type4 commands outputFile
+ * [--users=N] [--seed=S] [--follow-skew=X] [--like-skew=X] [--error-rate=R]
+ */
+public class WorkloadGenerator {
+    private static final char[] ALPHANUMERIC =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+    private static final int RECENT_FOLLOWS = 1 << 16; // follows remembered to be undone by unfollows
+
+    /***
+     * The command mix and error shape of one sample input.
+     */
+    private static class Profile {
+        double[] weights; // share of each command type, indexed by type - 1
+        double unknownRate; // share of IDs that name no user or post
+        double duplicateUserRate; // share of create_user commands that repeat an existing user ID
+        double duplicatePostRate; // share of create_post commands that repeat an existing post ID
+        double unfollowHitRate; // share of unfollows that undo an earlier follow
+        int unknownLength; // length of the random unknown IDs
+        int maxFeed; // largest number of posts asked by generate_feed and scroll_through_feed
+
+        Profile(double[] weights, double unknownRate, double duplicateUserRate, double duplicatePostRate,
+                double unfollowHitRate, int unknownLength, int maxFeed){
+            this.weights = weights;
+            this.unknownRate = unknownRate;
+            this.duplicateUserRate = duplicateUserRate;
+            this.duplicatePostRate = duplicatePostRate;
+            this.unfollowHitRate = unfollowHitRate;
+            this.unknownLength = unknownLength;
+            this.maxFeed = maxFeed;
+        }
+    }
+
+    // weights in the order of the command types: create_user, follow_user, unfollow_user, create_post, see_post,
+    // see_all_posts_from_user, toggle_like, generate_feed, scroll_through_feed, sort_posts
+    private static final Profile[] PROFILES = {
+            // type1: users and follow churn, almost every unfollow fails
+            new Profile(new double[]{0.52, 0.23, 0.25, 0, 0, 0, 0, 0, 0, 0}, 0.05, 0.02, 0, 0.05, 11, 0),
+            // type2: posts being created and seen
+            new Profile(new double[]{0.15, 0, 0, 0.30, 0.31, 0.12, 0.12, 0, 0, 0}, 0.08, 0.02, 0.03, 0, 8, 0),
+            // type3: everything, with follow and see_all churn and feeds
+            new Profile(new double[]{0.07, 0.08, 0.07, 0.15, 0.38, 0.03, 0.12, 0.01, 0.09, 0}, 0.15, 0.02, 0.05,
+                    0.6, 8, 1000),
+            // type4: likes and sorting, almost every create_user repeats an existing user
+            new Profile(new double[]{0.18, 0, 0, 0.35, 0, 0, 0.37, 0, 0, 0.10}, 0.10, 0.95, 0.10, 0, 8, 0),
+    };
+
+    private Profile profile;
+    private Random random;
+    private int userLimit; // largest number of distinct user IDs
+    private double followSkew;
+    private double likeSkew;
+    private int createdUsers;
+    private int createdPosts;
+    private long[] recentFollows = new long[RECENT_FOLLOWS]; // follower and followed number of recent follows
+    private int followCount;
+    private OutputStream out;
+
+    public static void main(String[] args) throws IOException{
+        if (args.length < 3 || !args[0].matches("type[1-4]")){
+            System.err.println("Usage: java WorkloadGenerator type1|type2|type3|type4 commands outputFile "
+                    + "[--users=N] [--seed=S] [--follow-skew=X] [--like-skew=X] [--error-rate=R]");
+            return;
+        }
+        long commands = Long.parseLong(args[1]);
+        Profile profile = PROFILES[args[0].charAt(4) - '1'];
+        long seed = 42;
+        int users = Integer.MAX_VALUE; // no limit, create_user repeats IDs only at the duplicate rate of the profile
+        double followSkew = 3;
+        double likeSkew = 3;
+        for (int i = 3; i < args.length; i++){
+            String value = args[i].substring(args[i].indexOf('=') + 1);
+            if (args[i].startsWith("--users=")){
+                users = Integer.parseInt(value);
+            } else if (args[i].startsWith("--seed=")){
+                seed = Long.parseLong(value);
+            } else if (args[i].startsWith("--follow-skew=")){
+                followSkew = Double.parseDouble(value);
+            } else if (args[i].startsWith("--like-skew=")){
+                likeSkew = Double.parseDouble(value);
+            } else if (args[i].startsWith("--error-rate=")){
+                profile.unknownRate = Double.parseDouble(value);
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+            }
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[2])), 1 << 20)){
+            new WorkloadGenerator(profile, seed, users, followSkew, likeSkew, out).generate(commands);
+        }
+    }
+
+    /***
+     * Constructor to set up a generator.
+     * @param profile The command mix to be generated.
+     * @param seed The seed of the random source.
+     * @param userLimit The largest number of distinct user IDs.
+     * @param followSkew The exponent of the power law of followed users and post authors, 1 for uniform.
+     * @param likeSkew The exponent of the power law of seen and liked posts, 1 for uniform.
+     * @param out The stream the commands are written to.
+     */
+    private WorkloadGenerator(Profile profile, long seed, int userLimit, double followSkew, double likeSkew,
+                             OutputStream out){
+        this.profile = profile;
+        this.random = new Random(seed);
+        this.userLimit = userLimit;
+        this.followSkew = followSkew;
+        this.likeSkew = likeSkew;
+        this.out = out;
+    }
+
+    /***
+     * Draws a value from a power law, so small values are drawn much more often than large ones.
+     * @param random The random source.
+     * @param count The number of distinct values.
+     * @param exponent The exponent of the law, 1 for uniform and larger for more skew.
+     * @return A value between 0 and count - 1.
+     */
+    public static int powerLaw(Random random, int count, double exponent){
+        return (int) Math.min(count - 1, Math.floor(count * Math.pow(random.nextDouble(), exponent)));
+    }
+
+    /***
+     * Writes the given number of commands.
+     * @param commands The number of commands to be written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void generate(long commands) throws IOException{
+        double total = 0;
+        for (double weight : profile.weights){
+            total += weight;
+        }
+        StringBuilder line = new StringBuilder(64);
+        for (long i = 0; i < commands; i++){
+            double pick = random.nextDouble() * total;
+            int type = 1;
+            while (type < profile.weights.length && pick >= profile.weights[type - 1]){
+                pick -= profile.weights[type - 1];
+                type++;
+            }
+            line.setLength(0);
+            line.append(Command.NAMES[type]);
+            appendArguments(type, line);
+            line.append('\n');
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /***
+     * Appends the arguments of a command.
+     * @param type The type of the command.
+     * @param line The line being built.
+     */
+    private void appendArguments(int type, StringBuilder line){
+        switch (type){
+            case Command.CREATE_USER:
+                if (createdUsers < userLimit
+                        && (createdUsers == 0 || random.nextDouble() >= profile.duplicateUserRate)){
+                    appendUser(line, ++createdUsers);
+                } else {
+                    appendUser(line, 1 + random.nextInt(Math.max(createdUsers, 1)));
+                }
+                break;
+            case Command.FOLLOW_USER: {
+                int follower = anyUser();
+                int followed = popularUser();
+                recentFollows[followCount++ & (RECENT_FOLLOWS - 1)] = (long) follower << 32 | followed;
+                appendUserOrUnknown(line, follower);
+                appendUserOrUnknown(line, followed);
+                break;
+            }
+            case Command.UNFOLLOW_USER:
+                if (followCount > 0 && random.nextDouble() < profile.unfollowHitRate){
+                    long follow = recentFollows[random.nextInt(Math.min(followCount, RECENT_FOLLOWS))];
+                    appendUserOrUnknown(line, (int) (follow >>> 32));
+                    appendUserOrUnknown(line, (int) follow);
+                } else {
+                    appendUserOrUnknown(line, anyUser());
+                    appendUserOrUnknown(line, anyUser());
+                }
+                break;
+            case Command.CREATE_POST:
+                appendUserOrUnknown(line, popularUser());
+                if (createdPosts == 0 || random.nextDouble() >= profile.duplicatePostRate){
+                    appendPost(line, ++createdPosts);
+                } else {
+                    appendPost(line, 1 + random.nextInt(createdPosts));
+                }
+                line.append(' ');
+                appendRandom(line, 8);
+                break;
+            case Command.SEE_POST:
+            case Command.TOGGLE_LIKE:
+                appendUserOrUnknown(line, anyUser());
+                appendPostOrUnknown(line);
+                break;
+            case Command.SEE_ALL_POSTS_FROM_USER:
+                appendUserOrUnknown(line, anyUser());
+                appendUserOrUnknown(line, popularUser());
+                break;
+            case Command.GENERATE_FEED:
+                appendUserOrUnknown(line, anyUser());
+                line.append(' ').append(1 + random.nextInt(Math.max(profile.maxFeed, 1)));
+                break;
+            case Command.SCROLL_THROUGH_FEED: {
+                appendUserOrUnknown(line, anyUser());
+                int count = 1 + random.nextInt(20);
+                line.append(' ').append(count);
+                for (int i = 0; i < count; i++){
+                    line.append(random.nextBoolean() ? " 1" : " 0");
+                }
+                break;
+            }
+            case Command.SORT_POSTS:
+                appendUserOrUnknown(line, popularUser());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /***
+     * Draws any user created so far with the same chance.
+     * @return The number of the user, starting from 1.
+     */
+    private int anyUser(){
+        return 1 + random.nextInt(Math.max(createdUsers, 1));
+    }
+
+    /***
+     * Draws a user created so far, earlier users being much more likely, as followed users and authors are.
+     * @return The number of the user, starting from 1.
+     */
+    private int popularUser(){
+        return 1 + powerLaw(random, Math.max(createdUsers, 1), followSkew);
+    }
+
+    /***
+     * Appends a user ID.
+     * @param line The line being built.
+     * @param number The number of the user.
+     */
+    private void appendUser(StringBuilder line, int number){
+        line.append(" user");
+        appendNumber(line, number);
+    }
+
+    /***
+     * Appends a post ID.
+     * @param line The line being built.
+     * @param number The number of the post.
+     */
+    private void appendPost(StringBuilder line, int number){
+        line.append(" post");
+        appendNumber(line, number);
+    }
+
+    /***
+     * Appends the ID of a user, or an unknown ID at the error rate of the profile.
+     * @param line The line being built.
+     * @param number The number of the user.
+     */
+    private void appendUserOrUnknown(StringBuilder line, int number){
+        if (random.nextDouble() < profile.unknownRate){
+            line.append(' ');
+            appendRandom(line, profile.unknownLength);
+        } else {
+            appendUser(line, number);
+        }
+    }
+
+    /***
+     * Appends the ID of a post created so far, popular posts being much more likely, or an unknown ID at the error
+     * rate of the profile.
+     * @param line The line being built.
+     */
+    private void appendPostOrUnknown(StringBuilder line){
+        if (createdPosts == 0 || random.nextDouble() < profile.unknownRate){
+            line.append(' ');
+            appendRandom(line, profile.unknownLength);
+        } else {
+            appendPost(line, 1 + powerLaw(random, createdPosts, likeSkew));
+        }
+    }
+
+    /***
+     * Appends a number padded to eight digits like the IDs of the samples.
+     * @param line The line being built.
+     * @param number The number to be appended.
+     */
+    private static void appendNumber(StringBuilder line, int number){
+        for (int digits = Integer.toString(number).length(); digits < 8; digits++){
+            line.append('0');
+        }
+        line.append(number);
+    }
+
+    /***
+     * Appends random letters and digits.
+     * @param line The line being built.
+     * @param length The number of characters.
+     */
+    private void appendRandom(StringBuilder line, int length){
+        for (int i = 0; i < length; i++){
+            line.append(ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)]);
+        }
+    }
+}
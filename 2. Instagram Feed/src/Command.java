@@ -0,0 +1,74 @@
+/***
+ * A compact record of one parsed input command.
+ * IDs are kept as integer handles and like actions as a primitive array, and the same record is reused for every
+ * line, so reading a command allocates nothing except the content of a new post.
+ */
+public class Command {
+    public static final int UNKNOWN = 0;
+    public static final int CREATE_USER = 1;
+    public static final int FOLLOW_USER = 2;
+    public static final int UNFOLLOW_USER = 3;
+    public static final int CREATE_POST = 4;
+    public static final int SEE_POST = 5;
+    public static final int SEE_ALL_POSTS_FROM_USER = 6;
+    public static final int TOGGLE_LIKE = 7;
+    public static final int GENERATE_FEED = 8;
+    public static final int SCROLL_THROUGH_FEED = 9;
+    public static final int SORT_POSTS = 10;
+
+    /***
+     * Names of the command types as they appear in the input, indexed by type.
+     */
+    public static final String[] NAMES = {"unknown", "create_user", "follow_user", "unfollow_user", "create_post",
+            "see_post", "see_all_posts_from_user", "toggle_like", "generate_feed", "scroll_through_feed", "sort_posts"};
+
+    int type;
+    int userHandle; // handle of the first user ID of the command
+    int targetHandle; // handle of the second user ID or of the post ID, depending on the type
+    int number; // number of posts for generate_feed and scroll_through_feed
+    String name; // the ID itself for create_user and create_post, so the executor never reads the dictionaries
+    String content; // content of the post for create_post
+    int[] likeActions = new int[16]; // like actions for scroll_through_feed, only the first likeCount are valid
+    int likeCount;
+    byte[] line = new byte[64]; // raw input line without its line break if lines are kept, first lineLength valid
+    int lineLength;
+
+    /***
+     * Gets the type of the command.
+     * @return One of the command type constants.
+     */
+    public int getType(){
+        return type;
+    }
+
+    /***
+     * Checks whether the command can change the state of the platform.
+     * @return True for commands that create, follow, see or like, false for commands that only read.
+     */
+    public boolean isMutating(){
+        return type != UNKNOWN && type != GENERATE_FEED && type != SORT_POSTS;
+    }
+
+    /***
+     * Copies another record into this one, so the other record can be reused while this one is still needed.
+     * @param other The record to be copied.
+     */
+    public void copyFrom(Command other){
+        type = other.type;
+        userHandle = other.userHandle;
+        targetHandle = other.targetHandle;
+        number = other.number;
+        name = other.name;
+        content = other.content;
+        likeCount = other.likeCount;
+        if (likeActions.length < likeCount){
+            likeActions = new int[other.likeActions.length];
+        }
+        System.arraycopy(other.likeActions, 0, likeActions, 0, likeCount);
+        lineLength = other.lineLength;
+        if (line.length < lineLength){
+            line = new byte[other.line.length];
+        }
+        System.arraycopy(other.line, 0, line, 0, lineLength);
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * Reads and parses commands on two threads of their own, ahead of the thread executing them.
+ * The reader thread fills raw chunks of the input file, the parser thread turns them into command records and the
+ * executor takes the records in input order. The stages are connected by bounded lock-free rings, and the chunks and
+ * records travel back through rings of their own to be reused, so the pipeline allocates nothing while running.
+ * The parser thread is the only one interning IDs into the dictionaries of the platform.
+ */
+public class CommandPipeline implements CommandSource {
+    private static final int CHUNK_SIZE = 1 << 20; // 1 MiB
+    private static final int CHUNK_COUNT = 4;
+    private static final int RECORD_COUNT = 1024; // records parsed ahead of the executor at most
+    private static final ByteBuffer END_OF_CHUNKS = ByteBuffer.allocate(0); // handed to the parser after the last chunk
+    private static final Command END_OF_COMMANDS = new Command(); // handed to the executor after the last command
+
+    private FileChannel file;
+    private MySpscRing<ByteBuffer> fullChunks; // reader -> parser
+    private MySpscRing<ByteBuffer> emptyChunks; // parser -> reader
+    private MySpscRing<Command> parsedCommands; // parser -> executor
+    private MySpscRing<Command> freeCommands; // executor -> parser
+    private Command current; // the record last returned to the executor
+    private volatile Exception failure; // the first error of the reader or the parser, reported to the executor
+
+    /***
+     * Constructor to open the input file and start the reader and parser threads.
+     * @param fileName The path of the input file.
+     * @param platform The platform whose dictionaries intern the IDs.
+     * @param keepLines Whether the raw line of every command is copied to its record.
+     * @throws IOException If an I/O error occurs.
+     */
+    public CommandPipeline(String fileName, Platform platform, boolean keepLines) throws IOException{
+        this.file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        this.fullChunks = new MySpscRing<>(CHUNK_COUNT + 1);
+        this.emptyChunks = new MySpscRing<>(CHUNK_COUNT);
+        for (int i = 0; i < CHUNK_COUNT; i++){
+            emptyChunks.put(ByteBuffer.allocateDirect(CHUNK_SIZE));
+        }
+        this.parsedCommands = new MySpscRing<>(RECORD_COUNT);
+        // enough records to fill the ring and still have one for the parser and one for the executor
+        this.freeCommands = new MySpscRing<>(RECORD_COUNT + 2);
+        for (int i = 0; i < RECORD_COUNT + 2; i++){
+            freeCommands.put(new Command());
+        }
+        CommandReader parser = new CommandReader(new ChunkChannel(), platform, keepLines);
+        start(new Thread(this::read, "command-reader"));
+        start(new Thread(() -> parse(parser), "command-parser"));
+    }
+
+    /***
+     * Starts a stage thread that does not keep the program alive if the executor stops early.
+     * @param thread The thread to be started.
+     */
+    private static void start(Thread thread){
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /***
+     * Fills chunks from the input file until its end. Runs on the reader thread.
+     */
+    private void read(){
+        try {
+            while (true){
+                ByteBuffer chunk = emptyChunks.take();
+                chunk.clear();
+                int read;
+                do {
+                    read = file.read(chunk); // fill the whole chunk, so the parser gets few large chunks
+                } while (read >= 0 && chunk.hasRemaining());
+                chunk.flip();
+                if (chunk.hasRemaining()){
+                    fullChunks.put(chunk);
+                }
+                if (read < 0){
+                    break;
+                }
+            }
+        } catch (IOException e){
+            failure = e;
+        }
+        fullChunks.put(END_OF_CHUNKS);
+    }
+
+    /***
+     * Parses commands from the chunks until the end of the input. Runs on the parser thread.
+     * @param parser The reader parsing the bytes supplied by the chunk channel.
+     */
+    private void parse(CommandReader parser){
+        try {
+            while (true){
+                Command command = freeCommands.take();
+                if (!parser.next(command)){
+                    break;
+                }
+                parsedCommands.put(command);
+            }
+        } catch (Exception e){
+            if (failure == null){
+                failure = e;
+            }
+        }
+        parsedCommands.put(END_OF_COMMANDS);
+    }
+
+    /***
+     * Gets the next parsed command and gives the previous record back to the parser.
+     * @return The next command, or null at the end of the input.
+     * @throws IOException If reading or parsing the input failed.
+     */
+    @Override
+    public Command next() throws IOException{
+        if (current != null){
+            freeCommands.put(current);
+        }
+        current = parsedCommands.take();
+        if (current == END_OF_COMMANDS){
+            current = null;
+            Exception e = failure;
+            if (e instanceof IOException){
+                throw (IOException) e;
+            } else if (e instanceof RuntimeException){
+                throw (RuntimeException) e;
+            }
+            return null;
+        }
+        return current;
+    }
+
+    /***
+     * Closes the input file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException{
+        file.close();
+    }
+
+    /***
+     * A channel handing the chunks of the reader thread to the parser, giving each chunk back once it is consumed.
+     */
+    private class ChunkChannel implements ReadableByteChannel {
+        private ByteBuffer chunk; // the chunk being consumed, null if the next one must be taken
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException{
+            if (chunk == null){
+                chunk = fullChunks.take();
+            }
+            if (chunk == END_OF_CHUNKS){
+                if (failure instanceof IOException){
+                    throw (IOException) failure;
+                }
+                return -1;
+            }
+            int count = Math.min(chunk.remaining(), destination.remaining());
+            int limit = chunk.limit();
+            chunk.limit(chunk.position() + count);
+            destination.put(chunk);
+            chunk.limit(limit);
+            if (!chunk.hasRemaining()){
+                emptyChunks.put(chunk);
+                chunk = null;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen(){
+            return true;
+        }
+
+        @Override
+        public void close(){
+            // the input file is closed by the pipeline
+        }
+    }
+}
@@ -0,0 +1,355 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * Reads commands from the input file without creating a String or an array for every line.
+ * The file is read through a FileChannel into a large direct buffer, the command is recognized by its first bytes,
+ * IDs are looked up straight from the buffer, only the IDs being created are interned, and numbers are parsed in place.
+ */
+public class CommandReader implements CommandSource {
+    private static final int BUFFER_SIZE = 1 << 22; // 4 MiB
+    private static final byte[][] NAME_BYTES = new byte[Command.NAMES.length][];
+    private static final int[] TOKEN_COUNTS = {1, 2, 3, 3, 4, 3, 3, 3, 3, 3, 2}; // tokens needed by each command type
+
+    static {
+        for (int type = 0; type < Command.NAMES.length; type++){
+            NAME_BYTES[type] = Command.NAMES[type].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private ReadableByteChannel channel;
+    private ByteBuffer buffer; // bytes between position and limit are not parsed yet
+    private boolean endOfFile;
+    private Platform platform;
+    private boolean keepLines; // whether the raw line is copied to the record, which only a write-ahead log needs
+    private int[] tokenStarts = new int[16]; // start index of each token of the current line in the buffer
+    private int[] tokenEnds = new int[16]; // end index (exclusive) of each token of the current line in the buffer
+    private int tokenCount;
+    private Command command = new Command(); // the record returned by next(), filled again by every line
+
+    /***
+     * Constructor to open the input file for reading.
+     * @param fileName The path of the input file.
+     * @param platform The platform whose dictionaries intern the IDs.
+     * @param keepLines Whether the raw line of every command is copied to its record.
+     * @throws IOException If an I/O error occurs.
+     */
+    public CommandReader(String fileName, Platform platform, boolean keepLines) throws IOException{
+        this(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ), platform, keepLines);
+    }
+
+    /***
+     * Constructor to read commands from a channel.
+     * @param channel The channel supplying the bytes of the input.
+     * @param platform The platform whose dictionaries intern the IDs.
+     * @param keepLines Whether the raw line of every command is copied to its record.
+     */
+    public CommandReader(ReadableByteChannel channel, Platform platform, boolean keepLines){
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.flip(); // start with an empty buffer
+        this.endOfFile = false;
+        this.platform = platform;
+        this.keepLines = keepLines;
+    }
+
+    /***
+     * Reads the next line into the record owned by this reader.
+     * @return The record filled with the line, or null at the end of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public Command next() throws IOException{
+        return next(command) ? command : null;
+    }
+
+    /***
+     * Reads the next line and fills the command record with it.
+     * @param command The record to be filled.
+     * @return True if a line was read, false at the end of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean next(Command command) throws IOException{
+        int lineEnd = findLineEnd();
+        if (lineEnd < 0){
+            return false;
+        }
+        int lineStart = buffer.position();
+        buffer.position(Math.min(lineEnd + 1, buffer.limit())); // skip the line and its '\n'
+        int end = lineEnd;
+        if (end > lineStart && buffer.get(end - 1) == '\r'){
+            end--; // lines of files written on Windows end with "\r\n"
+        }
+        tokenize(lineStart, end);
+        parse(command);
+        if (keepLines){
+            keepLine(command, lineStart, end);
+        }
+        return true;
+    }
+
+    /***
+     * Finds the end of the next line, reading more of the file if the line is not complete in the buffer.
+     * @return The index of the '\n' ending the line, the limit if the last line has no '\n', or -1 at the end of the
+     * file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int findLineEnd() throws IOException{
+        int scanned = buffer.position();
+        while (true){
+            for (int i = scanned; i < buffer.limit(); i++){
+                if (buffer.get(i) == '\n'){
+                    return i;
+                }
+            }
+            if (endOfFile){
+                return buffer.hasRemaining() ? buffer.limit() : -1;
+            }
+            scanned = buffer.remaining();
+            if (buffer.position() == 0 && buffer.limit() == buffer.capacity()){
+                // a line longer than the buffer, grow it
+                ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                bigger.put(buffer);
+                buffer = bigger;
+            } else {
+                buffer.compact(); // move the incomplete line to the start of the buffer
+            }
+            if (channel.read(buffer) < 0){
+                endOfFile = true;
+            }
+            buffer.flip();
+        }
+    }
+
+    /***
+     * Copies the raw bytes of the current line to the command record.
+     * @param command The record to be filled.
+     * @param start The index of the first byte of the line.
+     * @param end The index after the last byte of the line.
+     */
+    private void keepLine(Command command, int start, int end){
+        command.lineLength = end - start;
+        if (command.line.length < command.lineLength){
+            command.line = new byte[Math.max(command.lineLength, command.line.length * 2)];
+        }
+        buffer.get(start, command.line, 0, command.lineLength);
+    }
+
+    /***
+     * Splits a line into tokens separated by spaces.
+     * @param start The index of the first byte of the line.
+     * @param end The index after the last byte of the line.
+     */
+    private void tokenize(int start, int end){
+        tokenCount = 0;
+        int tokenStart = start;
+        for (int i = start; i <= end; i++){
+            if (i == end || buffer.get(i) == ' '){
+                if (tokenCount == tokenStarts.length){
+                    int[] newStarts = new int[tokenCount * 2];
+                    int[] newEnds = new int[tokenCount * 2];
+                    System.arraycopy(tokenStarts, 0, newStarts, 0, tokenCount);
+                    System.arraycopy(tokenEnds, 0, newEnds, 0, tokenCount);
+                    tokenStarts = newStarts;
+                    tokenEnds = newEnds;
+                }
+                tokenStarts[tokenCount] = tokenStart;
+                tokenEnds[tokenCount] = i;
+                tokenCount++;
+                tokenStart = i + 1;
+            }
+        }
+        while (tokenCount > 1 && tokenStarts[tokenCount - 1] == tokenEnds[tokenCount - 1]){
+            tokenCount--; // trailing empty tokens are dropped like String.split does
+        }
+    }
+
+    /***
+     * Recognizes the command of the current line by the first bytes of its first token.
+     * @return One of the command type constants.
+     */
+    private int recognize(){
+        int start = tokenStarts[0];
+        int length = tokenEnds[0] - start;
+        if (length < 8){
+            return Command.UNKNOWN; // shorter than any command name
+        }
+        int type;
+        switch (buffer.get(start)){
+            case 'c':
+                type = buffer.get(start + 7) == 'u' ? Command.CREATE_USER : Command.CREATE_POST;
+                break;
+            case 'f':
+                type = Command.FOLLOW_USER;
+                break;
+            case 'u':
+                type = Command.UNFOLLOW_USER;
+                break;
+            case 's':
+                if (buffer.get(start + 1) == 'c'){
+                    type = Command.SCROLL_THROUGH_FEED;
+                } else if (buffer.get(start + 1) == 'o'){
+                    type = Command.SORT_POSTS;
+                } else {
+                    type = buffer.get(start + 4) == 'a' ? Command.SEE_ALL_POSTS_FROM_USER : Command.SEE_POST;
+                }
+                break;
+            case 't':
+                type = Command.TOGGLE_LIKE;
+                break;
+            case 'g':
+                type = Command.GENERATE_FEED;
+                break;
+            default:
+                return Command.UNKNOWN;
+        }
+        // the prefix only selects the candidate, the whole name must still match
+        byte[] name = NAME_BYTES[type];
+        if (name.length != length){
+            return Command.UNKNOWN;
+        }
+        for (int i = 0; i < length; i++){
+            if (buffer.get(start + i) != name[i]){
+                return Command.UNKNOWN;
+            }
+        }
+        return tokenCount < TOKEN_COUNTS[type] ? Command.UNKNOWN : type;
+    }
+
+    /***
+     * Fills the command record from the tokens of the current line.
+     * @param command The record to be filled.
+     */
+    private void parse(Command command){
+        command.type = recognize();
+        switch (command.type){
+            case Command.CREATE_USER:
+                command.userHandle = newUserHandle(1);
+                command.name = platform.getUserID(command.userHandle);
+                break;
+            case Command.SORT_POSTS:
+                command.userHandle = userHandle(1);
+                break;
+            case Command.FOLLOW_USER:
+            case Command.UNFOLLOW_USER:
+            case Command.SEE_ALL_POSTS_FROM_USER:
+                command.userHandle = userHandle(1);
+                command.targetHandle = userHandle(2);
+                break;
+            case Command.CREATE_POST:
+                command.userHandle = userHandle(1);
+                // the post ID is kept only if the post can be created, i.e. its author exists
+                command.targetHandle = command.userHandle < 0 ? postHandle(2) : newPostHandle(2);
+                command.name = command.targetHandle < 0 ? null : platform.getPostID(command.targetHandle);
+                command.content = text(3);
+                break;
+            case Command.SEE_POST:
+            case Command.TOGGLE_LIKE:
+                command.userHandle = userHandle(1);
+                command.targetHandle = postHandle(2);
+                break;
+            case Command.GENERATE_FEED:
+                command.userHandle = userHandle(1);
+                command.number = number(2);
+                break;
+            case Command.SCROLL_THROUGH_FEED:
+                command.userHandle = userHandle(1);
+                command.number = number(2);
+                command.likeCount = tokenCount - 3;
+                if (command.likeActions.length < command.likeCount){
+                    command.likeActions = new int[Math.max(command.likeCount, command.likeActions.length * 2)];
+                }
+                for (int i = 0; i < command.likeCount; i++){
+                    command.likeActions[i] = number(i + 3); // to get which post is liked
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /***
+     * Interns a token as the ID of a user being created.
+     * @param token The index of the token in the line.
+     * @return The handle of the user ID.
+     */
+    private int newUserHandle(int token){
+        return platform.getUserIds().intern(buffer, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+    }
+
+    /***
+     * Interns a token as the ID of a post being created.
+     * @param token The index of the token in the line.
+     * @return The handle of the post ID.
+     */
+    private int newPostHandle(int token){
+        return platform.getPostIds().intern(buffer, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+    }
+
+    /***
+     * Looks up a token as a user ID without interning it.
+     * @param token The index of the token in the line.
+     * @return The handle of the user ID, or -1 if no such ID was interned.
+     */
+    private int userHandle(int token){
+        return platform.getUserIds().lookup(buffer, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+    }
+
+    /***
+     * Looks up a token as a post ID without interning it.
+     * @param token The index of the token in the line.
+     * @return The handle of the post ID, or -1 if no such ID was interned.
+     */
+    private int postHandle(int token){
+        return platform.getPostIds().lookup(buffer, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+    }
+
+    /***
+     * Parses a token as a decimal integer in place.
+     * @param token The index of the token in the line.
+     * @return The value of the token.
+     */
+    private int number(int token){
+        int i = tokenStarts[token];
+        boolean negative = buffer.get(i) == '-';
+        if (negative){
+            i++;
+        }
+        int value = 0;
+        for (; i < tokenEnds[token]; i++){
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9){
+                throw new NumberFormatException("For input token " + text(token));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /***
+     * Copies a token to a new String.
+     * @param token The index of the token in the line.
+     * @return The token as a String.
+     */
+    private String text(int token){
+        byte[] bytes = new byte[tokenEnds[token] - tokenStarts[token]];
+        for (int i = 0; i < bytes.length; i++){
+            bytes[i] = buffer.get(tokenStarts[token] + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /***
+     * Closes the input file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
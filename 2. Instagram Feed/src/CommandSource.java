@@ -0,0 +1,19 @@
+import java.io.IOException;
+
+/***
+ * A source of parsed commands in input order.
+ */
+public interface CommandSource {
+    /***
+     * Gets the next command. The returned record is only valid until the next call.
+     * @return The next command, or null at the end of the input.
+     * @throws IOException If an I/O error occurs.
+     */
+    Command next() throws IOException;
+
+    /***
+     * Closes the input.
+     * @throws IOException If an I/O error occurs.
+     */
+    void close() throws IOException;
+}
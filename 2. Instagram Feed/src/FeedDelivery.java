@@ -0,0 +1,196 @@
+/***
+ * Delivers posts to feeds partly when they are written and partly when feeds are read.
+ * Authors with fewer followers than the threshold push their posts into the inboxes of their followers, so a feed
+ * reads them from one like-ordered list. Posts of authors with more followers are merged from the authors' own
+ * rankings when the feed is read, as pushing them would touch too many inboxes.
+ * An inbox holds exactly the unseen posts of the pushing authors its owner follows, kept in descending order of likes,
+ * so a post leaves it once its owner sees it and moves in it whenever its likes change. An author who reaches the
+ * threshold stops pushing for good, so an author whose follower count goes up and down around the threshold does not
+ * move posts in and out of inboxes every time.
+ */
+public class FeedDelivery {
+    private int threshold; // authors with at least this many followers are merged when feeds are read
+    private long pushedPosts; // posts put into inboxes
+    private long reorderedPosts; // posts moved in inboxes because their likes changed
+    private long switchedAuthors; // authors who stopped pushing after reaching the threshold
+    private long feeds; // feeds read
+    private long mergedAuthors; // post lists of authors merged when feeds were read
+
+    /***
+     * Constructor to initialize the delivery with a follower threshold.
+     * @param threshold The number of followers from which an author's posts are merged when feeds are read.
+     */
+    public FeedDelivery(int threshold){
+        if (threshold < 1){
+            throw new IllegalArgumentException("Fan-out threshold must be positive: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /***
+     * Sets up a user for delivery. The user pushes its posts if it has fewer followers than the threshold.
+     * Its inbox starts empty, the posts of the users it follows are delivered by fillInbox.
+     * @param user The user to be set up.
+     */
+    public void attach(User user){
+        user.setDelivery(this, user.getFollowerCount() < threshold);
+    }
+
+    /***
+     * Puts the unseen posts of all pushing authors a user follows into the user's inbox.
+     * @param user The user whose inbox is filled.
+     */
+    public void fillInbox(User user){
+        user.forEachFollowing(author -> {
+            if (author.isPushing()){
+                deliverAll(author, user);
+            }
+        });
+    }
+
+    /***
+     * Pushes a new post to the followers of its author if the author is pushing.
+     * @param post The created post.
+     */
+    public void postCreated(Post post){
+        User author = post.getAuthor();
+        if (author.isPushing()){
+            author.forEachFollower(follower -> deliver(follower, post));
+        }
+    }
+
+    /***
+     * Delivers the posts of an author to a new follower, or stops the author from pushing if it has just reached the
+     * threshold.
+     * @param follower The user who started following.
+     * @param author The followed user.
+     */
+    public void followed(User follower, User author){
+        if (!author.isPushing()){
+            return;
+        }
+        if (author.getFollowerCount() >= threshold){
+            stopPushing(author);
+        } else {
+            deliverAll(author, follower);
+        }
+    }
+
+    /***
+     * Takes the posts of an author out of the inbox of a former follower.
+     * @param follower The user who stopped following.
+     * @param author The unfollowed user.
+     */
+    public void unfollowed(User follower, User author){
+        if (author.isPushing()){
+            author.forEachPost(post -> {
+                if (!follower.hasSeen(post)){
+                    follower.getInbox().remove(post);
+                }
+            });
+        }
+    }
+
+    /***
+     * Takes a post out of the inboxes holding it before its likes change, as inboxes find posts by their likes.
+     * @param post The post whose likes are about to change.
+     */
+    public void beforeLikeChange(Post post){
+        User author = post.getAuthor();
+        if (author.isPushing()){
+            author.forEachFollower(follower -> {
+                if (!follower.hasSeen(post)){
+                    follower.getInbox().remove(post);
+                }
+            });
+        }
+    }
+
+    /***
+     * Puts a post back into the inboxes holding it after its likes changed, at its new place.
+     * @param post The post whose likes have changed.
+     */
+    public void afterLikeChange(Post post){
+        User author = post.getAuthor();
+        if (author.isPushing()){
+            author.forEachFollower(follower -> {
+                if (!follower.hasSeen(post)){
+                    follower.getInbox().add(post);
+                    reorderedPosts++;
+                }
+            });
+        }
+    }
+
+    /***
+     * Takes a post out of a user's inbox once the user has seen it.
+     * @param viewer The user who saw the post.
+     * @param post The seen post.
+     */
+    public void seen(User viewer, Post post){
+        User author = post.getAuthor();
+        if (author.isPushing() && viewer.isFollowing(author)){
+            viewer.getInbox().remove(post);
+        }
+    }
+
+    /***
+     * Counts a feed being read.
+     * @param merged The number of author post lists merged for the feed besides the inbox.
+     */
+    public void feedRead(int merged){
+        feeds++;
+        mergedAuthors += merged;
+    }
+
+    /***
+     * Adds the delivery counters to the metrics of the run.
+     * @param metrics The metrics the counters are added to.
+     */
+    public void reportTo(Metrics metrics){
+        metrics.addCounter("fan-out threshold", threshold);
+        metrics.addCounter("posts pushed to inboxes", pushedPosts);
+        metrics.addCounter("posts reordered in inboxes", reorderedPosts);
+        metrics.addCounter("authors switched to read-time merge", switchedAuthors);
+        metrics.addCounter("feeds read", feeds);
+        metrics.addCounter("author lists merged at read time", mergedAuthors);
+    }
+
+    /***
+     * Stops an author from pushing and takes its posts out of the inboxes of its followers.
+     * @param author The author who reached the threshold.
+     */
+    private void stopPushing(User author){
+        author.forEachFollower(follower -> {
+            author.forEachPost(post -> {
+                if (!follower.hasSeen(post)){
+                    follower.getInbox().remove(post);
+                }
+            });
+            follower.resetFeed(); // the author's list is merged on its own from now on
+        });
+        author.stopPushing();
+        switchedAuthors++;
+    }
+
+    /***
+     * Puts the unseen posts of an author into a follower's inbox.
+     * @param author The pushing author.
+     * @param follower The follower receiving the posts.
+     */
+    private void deliverAll(User author, User follower){
+        author.forEachPost(post -> deliver(follower, post));
+    }
+
+    /***
+     * Puts a post into a follower's inbox unless the follower has seen it.
+     * @param follower The follower receiving the post.
+     * @param post The post to be delivered.
+     */
+    private void deliver(User follower, Post post){
+        if (!follower.hasSeen(post)){
+            follower.getInbox().add(post);
+            pushedPosts++;
+        }
+    }
+}
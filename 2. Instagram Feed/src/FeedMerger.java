@@ -0,0 +1,354 @@
+import java.util.ArrayList;
+
+/***
+ * Generates the feed of a user lazily by merging the like-ordered post lists of the users they follow.
+ * Only one cursor per followed user is kept in a max-heap, so emitting a post costs O(log following)
+ * and the merge stops as soon as enough posts are taken.
+ * With hybrid delivery the posts of pushing authors are already in the viewer's inbox, so only the inbox and the
+ * lists of the followed users who do not push are merged.
+ * A merge is kept by its user as a feed index and resumed by the next feed read, as long as every post it emitted
+ * has been seen. The cursor of a list that changed meanwhile finds its place again by binary search for the key of
+ * the last post it passed, and moves back only to unseen posts that a recent change put above that key. Only that
+ * cursor is then moved in the heap, which orders cursors by the keys they had when placed, so the keys of the other
+ * cursors stay valid. A list that changed too often to know which posts moved keeps a longer change log from then
+ * on, and its cursor starts again from the top of the list this once. Following or unfollowing a user adds or removes
+ * a single cursor. A scroll consumes posts from the merge, while generate_feed only peeks at them, so repeated feeds
+ * of a user cost O(num log num) and not a merge of every followed list.
+ */
+public class FeedMerger {
+    /***
+     * Represents the position of the merge in the post list of a followed user.
+     */
+    private class Cursor implements Comparable<Cursor> {
+        int owner; // handle of the followed user whose list this is, -1 for the inbox
+        MySortedList<Post> posts;
+        int index;
+        int modCount; // modification count of the list when the cursor was placed
+        int passedLikes; // like count of the post before the cursor when it was passed
+        String passedPostID; // post ID of the post before the cursor, null if the cursor is at the top
+        int currentLikes; // like count of the current post when the cursor was placed, its key in the heap
+        String currentPostID; // post ID of the current post when the cursor was placed
+        int slot; // position of the cursor in the heap, 0 if it is not in the heap
+
+        /***
+         * Constructor to initialize a cursor at the most liked post of a list.
+         * @param owner The handle of the followed user, or -1 for the inbox.
+         * @param posts The like-ordered post list of a followed user.
+         */
+        Cursor(int owner, MySortedList<Post> posts){
+            this.owner = owner;
+            this.posts = posts;
+            this.index = 0;
+            this.modCount = posts.getModCount();
+            posts.keepChanges();
+        }
+
+        /***
+         * Moves the cursor to an index and remembers the key of the post before it, so the place can be found again
+         * after the list changes, and the key of the current post, by which the cursor is ordered in the heap.
+         * A cursor in the heap must be updated there after it moved.
+         * @param newIndex The new index of the cursor.
+         */
+        void moveTo(int newIndex){
+            index = newIndex;
+            if (index > 0){
+                Post passed = posts.get(index - 1);
+                passedLikes = passed.getLikeCount();
+                passedPostID = passed.getPostID();
+            } else {
+                passedPostID = null;
+            }
+            if (index < posts.size()){
+                Post current = posts.get(index);
+                currentLikes = current.getLikeCount();
+                currentPostID = current.getPostID();
+            }
+        }
+
+        /***
+         * Gets the post the cursor is currently pointing at.
+         * @return The current post.
+         */
+        Post current(){
+            return posts.get(index);
+        }
+
+        /***
+         * Moves the cursor to the next post the viewer has not seen.
+         * @return True if such a post exists, false if the list is exhausted.
+         */
+        boolean skipSeen(){
+            moveTo(nextUnseen(index));
+            return index < posts.size();
+        }
+
+        /***
+         * Finds the first post the viewer has not seen from a position of the list on.
+         * @param from The position to start from.
+         * @return The position of the post, or the size of the list if there is none.
+         */
+        int nextUnseen(int from){
+            while (from < posts.size() && viewer.hasSeen(posts.get(from))){
+                from++;
+            }
+            return from;
+        }
+
+        /***
+         * Finds the place of the cursor again if the list has changed since the cursor was placed.
+         * Every post above the key of the passed post was seen, unless a change since then added it or moved it
+         * there, so the cursor goes to the first post not above the key or to the highest such unseen post.
+         * @return True if the cursor was moved, false if the list is unchanged.
+         */
+        boolean relocateIfChanged(){
+            int newModCount = posts.getModCount();
+            if (modCount == newModCount){
+                return false;
+            }
+            if (passedPostID == null){
+                moveTo(0);
+            } else if (!posts.hasChangesSince(modCount)){
+                posts.keepMoreChanges(); // so the next relocation finds the moved posts in the log
+                moveTo(0); // any post above the key may have moved there unseen
+            } else {
+                int newIndex = posts.indexAfter(post -> post.compareTo(passedLikes, passedPostID));
+                for (int count = modCount; count != newModCount; count++){
+                    Post post = posts.getChange(count);
+                    if (post != null && post.compareTo(passedLikes, passedPostID) > 0 && !viewer.hasSeen(post)){
+                        int postIndex = posts.indexOf(post);
+                        if (postIndex >= 0){
+                            newIndex = Math.min(newIndex, postIndex);
+                        }
+                    }
+                }
+                moveTo(newIndex);
+            }
+            modCount = newModCount;
+            return true;
+        }
+
+        /***
+         * Compares two cursors by the keys their current posts had when the cursors were placed, which are the keys
+         * the posts still have unless their lists changed.
+         * @param other the other cursor to be compared.
+         * @return A negative integer, zero, or a positive integer as the current post of this cursor is less than,
+         * equal to, or greater than the current post of the other cursor.
+         */
+        @Override
+        public int compareTo(Cursor other){
+            if (currentLikes == other.currentLikes){
+                return currentPostID.compareTo(other.currentPostID);
+            }
+            return Integer.compare(currentLikes, other.currentLikes);
+        }
+    }
+
+    /***
+     * Represents a post the merge may emit next while it is peeked at, either the current post of the cursor at a
+     * position of the heap or a later post of the list of a cursor taken from the heap.
+     */
+    private class Candidate implements Comparable<Candidate> {
+        Cursor cursor;
+        int slot; // position of the cursor in the heap, 0 if the candidate is further down the list of the cursor
+        int index; // position of the post in the list of the cursor
+
+        /***
+         * Constructor to initialize a candidate.
+         * @param cursor The cursor whose list holds the post.
+         * @param slot The position of the cursor in the heap, or 0.
+         * @param index The position of the post in the list.
+         */
+        Candidate(Cursor cursor, int slot, int index){
+            this.cursor = cursor;
+            this.slot = slot;
+            this.index = index;
+        }
+
+        /***
+         * Gets the post of the candidate.
+         * @return The post.
+         */
+        Post post(){
+            return cursor.posts.get(index);
+        }
+
+        /***
+         * Compares two candidates by their posts.
+         * @param other the other candidate to be compared.
+         * @return A negative integer, zero, or a positive integer as the post of this candidate is less than, equal to,
+         * or greater than the post of the other candidate.
+         */
+        @Override
+        public int compareTo(Candidate other){
+            return post().compareTo(other.post());
+        }
+    }
+
+    private User viewer;
+    private MyPriorityQueue<Cursor> cursors; // cursors that may have an unseen post, by their current posts
+    private ArrayList<Cursor> lists; // a cursor for every merged list, including exhausted ones, by owner handle
+
+    /***
+     * Constructor to initialize the merge over all users followed by the viewer.
+     * @param viewer The user whose feed is generated.
+     */
+    public FeedMerger(User viewer){
+        this.viewer = viewer;
+        int capacity = viewer.getFollowingCount() + 1; // a cursor per followed user and the inbox
+        this.cursors = new MyPriorityQueue<>(capacity){
+            @Override
+            protected void placed(Cursor cursor, int index){
+                cursor.slot = index;
+            }
+        };
+        this.lists = new ArrayList<>(capacity);
+        MySortedList<Post> inbox = viewer.getInbox();
+        if (inbox != null){
+            Cursor cursor = new Cursor(-1, inbox);
+            lists.add(cursor);
+            if (cursor.skipSeen()){
+                cursors.add(cursor);
+            }
+        }
+        viewer.forEachFollowing(this::followed);
+        if (inbox != null){
+            viewer.getDelivery().feedRead(lists.size() - 1); // lists merged besides the inbox
+        }
+    }
+
+    /***
+     * Adds the post list of a followed user to the merge, unless its posts are delivered to the inbox.
+     * @param followedUser The user followed by the viewer.
+     */
+    public void followed(User followedUser){
+        if (viewer.getInbox() != null && followedUser.isPushing()){
+            return; // the unseen posts of this user are in the inbox
+        }
+        Cursor cursor = new Cursor(followedUser.getHandle(), followedUser.getRankedPosts());
+        lists.add(findList(cursor.owner), cursor); // at the end while the merge is built in handle order
+        if (viewer.hasSeenAllPostsOf(followedUser)){
+            cursor.moveTo(cursor.posts.size()); // nothing to merge from this user, skip scanning the list
+            return;
+        }
+        if (cursor.skipSeen()){
+            cursors.add(cursor);
+        }
+    }
+
+    /***
+     * Removes the post list of a user the viewer stopped following from the merge, if it is merged.
+     * @param unfollowedUser The user no longer followed by the viewer.
+     */
+    public void unfollowed(User unfollowedUser){
+        int index = findList(unfollowedUser.getHandle());
+        if (index < lists.size() && lists.get(index).owner == unfollowedUser.getHandle()){
+            Cursor cursor = lists.remove(index);
+            if (cursor.slot > 0){
+                cursors.remove(cursor.slot);
+            }
+        }
+    }
+
+    /***
+     * Finds the place of a followed user's list among the merged lists with binary search.
+     * @param handle The handle of the followed user.
+     * @return The index of the first list whose owner handle is not less than the handle.
+     */
+    private int findList(int handle){
+        int low = 0;
+        int high = lists.size();
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (lists.get(mid).owner < handle){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /***
+     * Prepares a kept merge for resuming. Cursors of lists that changed since they were placed find their places
+     * again and are moved in the heap one by one, while the other cursors stay where they are. The viewer must have
+     * seen every post emitted so far.
+     */
+    public void resume(){
+        int changed = 0;
+        for (Cursor cursor : lists){
+            if (cursor.relocateIfChanged()){
+                changed++;
+                boolean hasPost = cursor.skipSeen();
+                if (cursor.slot > 0){
+                    if (hasPost){
+                        cursors.update(cursor.slot);
+                    } else {
+                        cursors.remove(cursor.slot);
+                    }
+                } else if (hasPost){
+                    cursors.add(cursor);
+                }
+            }
+        }
+        if (viewer.getDelivery() != null){
+            viewer.getDelivery().feedRead(changed);
+        }
+    }
+
+    /***
+     * Gets the next posts of the merge without consuming them, so the merge can be read again.
+     * The heap of cursors is walked as a tree: the children of a cursor's slot can only hold less liked posts, so
+     * they become candidates once the cursor's post is taken, together with the next unseen post of its list. The
+     * heap is left as it is, and at most 2 * num candidates are visited besides posts seen since they were reached.
+     * @param num The maximum number of posts.
+     * @return A list of at most num posts in descending order of likes, the posts next() would return.
+     */
+    public ArrayList<Post> peek(int num){
+        ArrayList<Post> feed = new ArrayList<>();
+        MyPriorityQueue<Candidate> candidates = new MyPriorityQueue<>(Math.min(num, cursors.size()) * 2 + 1);
+        if (!cursors.isEmpty()){
+            candidates.add(new Candidate(cursors.get(1), 1, cursors.get(1).index));
+        }
+        Candidate candidate;
+        while (feed.size() < num && (candidate = candidates.poll()) != null){
+            int slot = candidate.slot;
+            for (int child = slot * 2; slot > 0 && child <= slot * 2 + 1 && child <= cursors.size(); child++){
+                candidates.add(new Candidate(cursors.get(child), child, cursors.get(child).index));
+            }
+            Post post = candidate.post();
+            if (!viewer.hasSeen(post)){
+                feed.add(post); // a post seen since the cursor reached it is passed over as next() does
+            }
+            int next = candidate.cursor.nextUnseen(candidate.index + 1);
+            if (next < candidate.cursor.posts.size()){
+                candidates.add(new Candidate(candidate.cursor, 0, next));
+            }
+        }
+        return feed;
+    }
+
+    /***
+     * Gets the next most liked post in the feed that the viewer has not seen.
+     * A cursor may point at a post the viewer saw after the cursor was placed, such a cursor is moved on and put
+     * back, which is safe as its next unseen post can only be less liked.
+     * @return The next post, or null if the feed is exhausted.
+     */
+    public Post next(){
+        Cursor cursor;
+        while ((cursor = cursors.poll()) != null){
+            if (viewer.hasSeen(cursor.current())){
+                if (cursor.skipSeen()){
+                    cursors.add(cursor);
+                }
+                continue;
+            }
+            Post post = cursor.current();
+            cursor.moveTo(cursor.index + 1);
+            if (cursor.skipSeen()){
+                cursors.add(cursor); // the cursor goes back with its next unseen post
+            }
+            return post;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,283 @@
+import java.util.function.Consumer;
+
+/***
+ * Keeps one direction of the follow relation of all users, e.g. whom each user follows, as compact rows of handles.
+ * Like a CSR adjacency, every user has a sorted int array of the handles it points to, so an edge costs four bytes
+ * and visiting the edges of a user is a scan of one array. Recent follows and unfollows go into small sorted delta
+ * buffers of the user instead of shifting the row, and once a user has enough pending changes, or its edges are
+ * visited, its row is compacted by merging the deltas into it.
+ * Rows are kept per user rather than in one shared array, so compacting a row moves no other row, and the shards of
+ * the engine, which change the rows of different users, never write the same array.
+ */
+public class FollowGraph {
+    private static final int DELTA_LIMIT = 16; // pending changes of a user before its row is compacted
+    private static final int[] EMPTY = new int[0];
+
+    private Platform platform; // resolves handles to users
+    private int[][] rows; // sorted handles of each user as of its last compaction
+    private int[] rowSizes;
+    private int[][] added; // sorted handles added to each user since its last compaction, not in its row
+    private int[] addedCounts;
+    private int[][] removed; // sorted handles removed from each user since its last compaction, still in its row
+    private int[] removedCounts;
+
+    /***
+     * Constructor to initialize an empty graph.
+     * @param platform The platform keeping the users, used to resolve handles.
+     * @param capacity The initial number of users.
+     */
+    public FollowGraph(Platform platform, int capacity){
+        this.platform = platform;
+        this.rows = new int[capacity][];
+        this.rowSizes = new int[capacity];
+        this.added = new int[capacity][];
+        this.addedCounts = new int[capacity];
+        this.removed = new int[capacity][];
+        this.removedCounts = new int[capacity];
+        for (int i = 0; i < capacity; i++){
+            rows[i] = EMPTY;
+            added[i] = EMPTY;
+            removed[i] = EMPTY;
+        }
+    }
+
+    /***
+     * Grows the graph, at least doubling it, so a user with the given handle fits.
+     * @param handle The handle of the user.
+     */
+    public void makeRoomForUser(int handle){
+        if (handle < rows.length){
+            return;
+        }
+        int oldLength = rows.length;
+        int newLength = Math.max(oldLength * 2, handle + 1);
+        rows = grow(rows, newLength);
+        added = grow(added, newLength);
+        removed = grow(removed, newLength);
+        rowSizes = grow(rowSizes, newLength);
+        addedCounts = grow(addedCounts, newLength);
+        removedCounts = grow(removedCounts, newLength);
+    }
+
+    /***
+     * Checks whether a user points to another.
+     * @param from The handle of the user.
+     * @param to The handle of the other user.
+     * @return True if the edge exists, false otherwise.
+     */
+    public boolean contains(int from, int to){
+        if (find(added[from], addedCounts[from], to) >= 0){
+            return true;
+        }
+        return find(rows[from], rowSizes[from], to) >= 0 && find(removed[from], removedCounts[from], to) < 0;
+    }
+
+    /***
+     * Adds an edge.
+     * @param from The handle of the user.
+     * @param to The handle of the user pointed to.
+     * @return True if the edge is new, false if it already existed.
+     */
+    public boolean add(int from, int to){
+        if (contains(from, to)){
+            return false;
+        }
+        int index = find(removed[from], removedCounts[from], to);
+        if (index >= 0){
+            removedCounts[from] = delete(removed[from], removedCounts[from], index); // the edge is back in its row
+        } else {
+            index = find(added[from], addedCounts[from], to);
+            added[from] = insert(added[from], addedCounts[from], -index - 1, to);
+            addedCounts[from]++;
+        }
+        compactIfFull(from);
+        return true;
+    }
+
+    /***
+     * Removes an edge.
+     * @param from The handle of the user.
+     * @param to The handle of the user pointed to.
+     * @return True if the edge existed, false otherwise.
+     */
+    public boolean remove(int from, int to){
+        int index = find(added[from], addedCounts[from], to);
+        if (index >= 0){
+            addedCounts[from] = delete(added[from], addedCounts[from], index);
+            return true;
+        }
+        if (find(rows[from], rowSizes[from], to) < 0){
+            return false;
+        }
+        index = find(removed[from], removedCounts[from], to);
+        if (index >= 0){
+            return false; // already removed
+        }
+        removed[from] = insert(removed[from], removedCounts[from], -index - 1, to);
+        removedCounts[from]++;
+        compactIfFull(from);
+        return true;
+    }
+
+    /***
+     * Gets the number of users a user points to.
+     * @param from The handle of the user.
+     * @return The number of edges of the user.
+     */
+    public int degree(int from){
+        return rowSizes[from] + addedCounts[from] - removedCounts[from];
+    }
+
+    /***
+     * Gets the handles a user points to in ascending order, compacting the row of the user first.
+     * @param from The handle of the user.
+     * @return The row of the user, of which the first degree(from) handles are valid until the next change.
+     */
+    public int[] getRow(int from){
+        compact(from);
+        return rows[from];
+    }
+
+    /***
+     * Performs an action for every user a user points to, in ascending order of handles.
+     * The row of the user is compacted first, so the visit is a scan of one array.
+     * @param from The handle of the user.
+     * @param action The action to be performed, which must not change the row of the user.
+     */
+    public void forEach(int from, Consumer<User> action){
+        compact(from);
+        int[] row = rows[from];
+        for (int i = 0, size = rowSizes[from]; i < size; i++){
+            action.accept(platform.getUser(row[i]));
+        }
+    }
+
+    /***
+     * Compacts the row of a user once its delta buffers are full.
+     * @param from The handle of the user.
+     */
+    private void compactIfFull(int from){
+        if (addedCounts[from] + removedCounts[from] >= DELTA_LIMIT){
+            compact(from);
+        }
+    }
+
+    /***
+     * Merges the delta buffers of a user into its row, leaving them empty. The new row has no spare room.
+     * @param from The handle of the user.
+     */
+    private void compact(int from){
+        int addedCount = addedCounts[from];
+        int removedCount = removedCounts[from];
+        if (addedCount == 0 && removedCount == 0){
+            return;
+        }
+        int[] row = rows[from];
+        int rowSize = rowSizes[from];
+        int[] add = added[from];
+        int[] drop = removed[from];
+        int[] merged = new int[rowSize + addedCount - removedCount];
+        int size = 0;
+        int a = 0;
+        int d = 0;
+        for (int r = 0; r < rowSize; r++){
+            int handle = row[r];
+            if (d < removedCount && drop[d] == handle){
+                d++; // removed since the last compaction
+                continue;
+            }
+            while (a < addedCount && add[a] < handle){
+                merged[size++] = add[a++];
+            }
+            merged[size++] = handle;
+        }
+        while (a < addedCount){
+            merged[size++] = add[a++];
+        }
+        rows[from] = size == 0 ? EMPTY : merged;
+        rowSizes[from] = size;
+        addedCounts[from] = 0;
+        removedCounts[from] = 0;
+    }
+
+    /***
+     * Finds a handle in a sorted array using binary search.
+     * @param array The sorted array.
+     * @param count The number of valid handles in the array.
+     * @param handle The handle to search for.
+     * @return The index of the handle, or -(insertion point) - 1 if it is not in the array.
+     */
+    private static int find(int[] array, int count, int handle){
+        int low = 0;
+        int high = count - 1;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            if (array[mid] < handle){
+                low = mid + 1;
+            } else if (array[mid] > handle){
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /***
+     * Inserts a handle into a sorted array, growing it if it is full.
+     * @param array The sorted array.
+     * @param count The number of valid handles in the array.
+     * @param index The position of the new handle.
+     * @param handle The handle to be inserted.
+     * @return The array holding the handles, which is a new one if the old one was full.
+     */
+    private static int[] insert(int[] array, int count, int index, int handle){
+        if (count == array.length){
+            int[] newArray = new int[Math.max(4, Math.min(count * 2, DELTA_LIMIT))];
+            System.arraycopy(array, 0, newArray, 0, count);
+            array = newArray;
+        }
+        System.arraycopy(array, index, array, index + 1, count - index);
+        array[index] = handle;
+        return array;
+    }
+
+    /***
+     * Deletes a handle from a sorted array.
+     * @param array The sorted array.
+     * @param count The number of valid handles in the array.
+     * @param index The position of the handle to be deleted.
+     * @return The new number of valid handles.
+     */
+    private static int delete(int[] array, int count, int index){
+        System.arraycopy(array, index + 1, array, index, count - index - 1);
+        return count - 1;
+    }
+
+    /***
+     * Copies an array of rows into a longer one, filling the new rows with the empty array.
+     * @param array The array to be copied.
+     * @param length The new length.
+     * @return The longer array.
+     */
+    private static int[][] grow(int[][] array, int length){
+        int[][] newArray = new int[length][];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        for (int i = array.length; i < length; i++){
+            newArray[i] = EMPTY;
+        }
+        return newArray;
+    }
+
+    /***
+     * Copies an array of counts into a longer one.
+     * @param array The array to be copied.
+     * @param length The new length.
+     * @return The longer array.
+     */
+    private static int[] grow(int[] array, int length){
+        int[] newArray = new int[length];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
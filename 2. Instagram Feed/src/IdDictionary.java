@@ -0,0 +1,216 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/***
+ * A dictionary that interns string IDs to dense integer handles.
+ * The first ID seen gets handle 0, the next new one gets handle 1 and so on, so handles can be used as array indices.
+ * IDs are looked up by their raw bytes, so an ID read from the input is interned without creating a String for it.
+ * Only IDs that are being created should be interned; other IDs are looked up, so unknown IDs are not kept.
+ * One thread interns and looks up IDs. New IDs are added under the lock of the dictionary, so another thread holding
+ * the lock, e.g. one writing a snapshot, sees a consistent dictionary.
+ */
+public class IdDictionary {
+    private int[] table; // open addressing table of handle + 1, 0 marks an empty slot
+    private int mask;
+    private int shift;
+    private byte[][] keys; // bytes of the IDs indexed by their handles
+    private int[] hashes; // hash codes of the IDs indexed by their handles
+    private String[] names; // IDs indexed by their handles
+    private int currentSize;
+
+    /***
+     * Constructor to initialize an empty dictionary with given capacity.
+     * @param capacity The initial capacity of the dictionary
+     */
+    public IdDictionary(int capacity){
+        capacity = Math.max(capacity, 1);
+        this.keys = new byte[capacity][];
+        this.hashes = new int[capacity];
+        this.names = new String[capacity];
+        this.currentSize = 0;
+        createTable(capacity * 2);
+    }
+
+    /***
+     * Allocates an empty table with at least the given length, rounded up to the next power of two.
+     * @param minLength The minimum table length.
+     */
+    private void createTable(int minLength){
+        int length = 2;
+        while (length < minLength){
+            length <<= 1;
+        }
+        table = new int[length];
+        mask = length - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+    }
+
+    /***
+     * Gets the handle of an ID given as bytes in a buffer, assigning the next free handle if the ID is seen for the
+     * first time.
+     * @param buffer The buffer holding the ID.
+     * @param offset The index of the first byte of the ID.
+     * @param length The number of bytes of the ID.
+     * @return The dense integer handle of the ID.
+     */
+    public int intern(ByteBuffer buffer, int offset, int length){
+        int hash = hash(buffer, offset, length);
+        int index = probe(buffer, offset, length, hash);
+        if (table[index] != 0){
+            return table[index] - 1;
+        }
+        byte[] key = new byte[length];
+        for (int i = 0; i < length; i++){
+            key[i] = buffer.get(offset + i);
+        }
+        return add(key, hash, index);
+    }
+
+    /***
+     * Gets the handle of an ID given as bytes in a buffer without interning it, so IDs that only appear as operands
+     * of failing commands take no memory.
+     * @param buffer The buffer holding the ID.
+     * @param offset The index of the first byte of the ID.
+     * @param length The number of bytes of the ID.
+     * @return The handle of the ID, or -1 if the ID was never interned.
+     */
+    public int lookup(ByteBuffer buffer, int offset, int length){
+        return table[probe(buffer, offset, length, hash(buffer, offset, length))] - 1;
+    }
+
+    /***
+     * Calculates the hash code of an ID given as bytes in a buffer.
+     * @param buffer The buffer holding the ID.
+     * @param offset The index of the first byte of the ID.
+     * @param length The number of bytes of the ID.
+     * @return The hash code of the ID.
+     */
+    private static int hash(ByteBuffer buffer, int offset, int length){
+        int hash = 0;
+        for (int i = 0; i < length; i++){
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        return hash;
+    }
+
+    /***
+     * Finds the table slot of an ID using linear probing.
+     * @param buffer The buffer holding the ID.
+     * @param offset The index of the first byte of the ID.
+     * @param length The number of bytes of the ID.
+     * @param hash The hash code of the ID.
+     * @return The slot holding the handle of the ID, or the empty slot where the probe ended if the ID is absent.
+     */
+    private int probe(ByteBuffer buffer, int offset, int length, int hash){
+        int index = (hash * 0x9E3779B9) >>> shift;
+        while (table[index] != 0){
+            int handle = table[index] - 1;
+            if (hashes[handle] == hash && equals(keys[handle], buffer, offset, length)){
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /***
+     * Gets the handle of an ID, assigning the next free handle if the ID is seen for the first time.
+     * @param name The string ID.
+     * @return The dense integer handle of the ID.
+     */
+    public int intern(String name){
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(key), 0, key.length);
+    }
+
+    /***
+     * Assigns the next free handle to a new ID.
+     * @param key The bytes of the ID.
+     * @param hash The hash code of the ID.
+     * @param index The empty table slot where the probe for the ID ended.
+     * @return The new handle.
+     */
+    private synchronized int add(byte[] key, int hash, int index){
+        if (currentSize == keys.length){
+            int newLength = keys.length * 2;
+            byte[][] newKeys = new byte[newLength][];
+            int[] newHashes = new int[newLength];
+            String[] newNames = new String[newLength];
+            System.arraycopy(keys, 0, newKeys, 0, currentSize);
+            System.arraycopy(hashes, 0, newHashes, 0, currentSize);
+            System.arraycopy(names, 0, newNames, 0, currentSize);
+            keys = newKeys;
+            hashes = newHashes;
+            names = newNames;
+        }
+        int handle = currentSize++;
+        keys[handle] = key;
+        hashes[handle] = hash;
+        names[handle] = new String(key, StandardCharsets.UTF_8);
+        table[index] = handle + 1;
+        if (currentSize * 2 > table.length){
+            rehash(); // keep the table at most half full
+        }
+        return handle;
+    }
+
+    /***
+     * Doubles the table and reinserts all handles.
+     */
+    private void rehash(){
+        createTable(table.length * 2);
+        for (int handle = 0; handle < currentSize; handle++){
+            int index = (hashes[handle] * 0x9E3779B9) >>> shift;
+            while (table[index] != 0){
+                index = (index + 1) & mask;
+            }
+            table[index] = handle + 1;
+        }
+    }
+
+    /***
+     * Compares the bytes of an interned ID with bytes in a buffer.
+     * @param key The bytes of the interned ID.
+     * @param buffer The buffer holding the other ID.
+     * @param offset The index of the first byte of the other ID.
+     * @param length The number of bytes of the other ID.
+     * @return True if the IDs are equal, false otherwise.
+     */
+    private static boolean equals(byte[] key, ByteBuffer buffer, int offset, int length){
+        if (key.length != length){
+            return false;
+        }
+        for (int i = 0; i < length; i++){
+            if (key[i] != buffer.get(offset + i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Gets the ID of a handle.
+     * @param handle The handle of the ID.
+     * @return The string ID the handle was assigned to.
+     */
+    public String getName(int handle){
+        return names[handle];
+    }
+
+    /***
+     * Gets the bytes of the ID of a handle.
+     * @param handle The handle of the ID.
+     * @return The UTF-8 bytes of the ID, which must not be changed.
+     */
+    public byte[] getBytes(int handle){
+        return keys[handle];
+    }
+
+    /***
+     * Gets the number of interned IDs.
+     * @return The number of handles assigned so far.
+     */
+    public synchronized int size(){
+        return currentSize;
+    }
+}
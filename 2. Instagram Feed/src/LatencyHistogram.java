@@ -0,0 +1,114 @@
+/***
+ * A histogram of latencies in nanoseconds with log-linear buckets. Every power of two is split into 32 equal buckets,
+ * so a recorded value is known to within about 3% whatever its size, and recording is a few shifts and an increment.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS; // buckets per power of two
+
+    private long[] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+    private long count;
+    private long total; // sum of all recorded values
+    private long max;
+
+    /***
+     * Records a value.
+     * @param nanos The value to be recorded, negative values are recorded as 0.
+     */
+    public void record(long nanos){
+        if (nanos < 0){
+            nanos = 0;
+        }
+        counts[indexOf(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max){
+            max = nanos;
+        }
+    }
+
+    /***
+     * Adds all values recorded in another histogram to this one.
+     * @param other The histogram to be added.
+     */
+    public void add(LatencyHistogram other){
+        for (int i = 0; i < counts.length; i++){
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    /***
+     * Finds the bucket of a value. Values below 64 get a bucket each, larger ones share a bucket with the values that
+     * have the same six leading bits.
+     * @param value The value, not negative.
+     * @return The index of the bucket.
+     */
+    private static int indexOf(long value){
+        if (value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS; // value >>> shift is between 32 and 63
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /***
+     * Gets the largest value that falls in a bucket.
+     * @param index The index of the bucket.
+     * @return The largest value of the bucket.
+     */
+    private static long highestValueOf(int index){
+        if (index < SUB_BUCKETS){
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /***
+     * Gets the value below or at which the given share of the recorded values lie, rounded up to its bucket.
+     * @param percentile The share, between 0 and 100.
+     * @return The value, or 0 if nothing is recorded.
+     */
+    public long getPercentile(double percentile){
+        if (count == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++){
+            seen += counts[i];
+            if (seen >= rank){
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /***
+     * Gets the number of recorded values.
+     * @return The number of values recorded or merged into this histogram.
+     */
+    public long getCount(){
+        return count;
+    }
+
+    /***
+     * Gets the largest recorded value.
+     * @return The largest value in nanoseconds, or 0 if nothing is recorded.
+     */
+    public long getMax(){
+        return max;
+    }
+
+    /***
+     * Gets the mean of the recorded values.
+     * @return The mean, or 0 if nothing is recorded.
+     */
+    public double getMean(){
+        return count == 0 ? 0 : (double) total / count;
+    }
+}
@@ -0,0 +1,53 @@
+import java.io.IOException;
+
+/***
+ * A log sink that collects bytes in memory, so log lines can be produced on one thread and written out later in the
+ * right order by another. The array is kept when the buffer is cleared, so a reused buffer stops allocating.
+ */
+public class LogBuffer extends LogSink {
+    private byte[] bytes = new byte[256];
+    private int size;
+
+    @Override
+    protected void put(int b){
+        if (size == bytes.length){
+            byte[] newBytes = new byte[size * 2];
+            System.arraycopy(bytes, 0, newBytes, 0, size);
+            bytes = newBytes;
+        }
+        bytes[size++] = (byte) b;
+    }
+
+    /***
+     * Appends the collected bytes to another sink.
+     * @param sink The sink receiving the bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(LogSink sink) throws IOException{
+        sink.put(bytes, 0, size);
+    }
+
+    /***
+     * Checks whether the collected bytes start with the given ones.
+     * @param prefix The bytes to be looked for.
+     * @return True if the collected bytes start with the prefix, false otherwise.
+     */
+    public boolean startsWith(byte[] prefix){
+        if (size < prefix.length){
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++){
+            if (bytes[i] != prefix[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Removes the collected bytes.
+     */
+    public void clear(){
+        size = 0;
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.IOException;
+
+/***
+ * A destination for log lines. Text is encoded as UTF-8 and integers are written in decimal byte by byte, so
+ * appending to a sink creates no garbage. Subclasses decide where the bytes go.
+ */
+public abstract class LogSink {
+    /***
+     * Appends a single byte.
+     * @param b The byte to be appended.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected abstract void put(int b) throws IOException;
+
+    /***
+     * Appends a range of bytes. Subclasses can override this to copy the range at once.
+     * @param bytes The array holding the bytes.
+     * @param offset The index of the first byte to be appended.
+     * @param length The number of bytes to be appended.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void put(byte[] bytes, int offset, int length) throws IOException{
+        for (int i = 0; i < length; i++){
+            put(bytes[offset + i]);
+        }
+    }
+
+    /***
+     * Appends text encoded as UTF-8.
+     * @param text The text to be appended.
+     * @return This sink, for chaining.
+     * @throws IOException If an I/O error occurs.
+     */
+    public LogSink append(String text) throws IOException{
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if (c < 0x80){
+                put(c);
+            } else if (c < 0x800){
+                put(0xC0 | (c >> 6));
+                put(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))){
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                put(0xF0 | (codePoint >> 18));
+                put(0x80 | ((codePoint >> 12) & 0x3F));
+                put(0x80 | ((codePoint >> 6) & 0x3F));
+                put(0x80 | (codePoint & 0x3F));
+            } else {
+                put(0xE0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    /***
+     * Appends an integer in decimal.
+     * @param value The integer to be appended.
+     * @return This sink, for chaining.
+     * @throws IOException If an I/O error occurs.
+     */
+    public LogSink append(int value) throws IOException{
+        if (value < 0){
+            put('-');
+            if (value == Integer.MIN_VALUE){
+                return append("2147483648");
+            }
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10){
+            divisor *= 10;
+        }
+        while (divisor > 0){
+            put('0' + value / divisor % 10);
+            divisor /= 10;
+        }
+        return this;
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * Writes the operation log to the output file on a dedicated thread.
+ * Log lines are encoded straight into reusable direct buffers. A full buffer is handed to the writer thread through a
+ * bounded lock-free ring and comes back empty through another one, so command processing overlaps with disk I/O and
+ * writing a line creates no garbage.
+ */
+public class LogWriter extends LogSink {
+    private static final int BUFFER_SIZE = 1 << 20; // 1 MiB
+    private static final int BUFFER_COUNT = 4;
+    private static final ByteBuffer END = ByteBuffer.allocate(0); // handed to the writer thread to stop it
+
+    private FileChannel channel;
+    private ByteBuffer current; // the buffer log lines are encoded into
+    private MySpscRing<ByteBuffer> fullBuffers;
+    private MySpscRing<ByteBuffer> emptyBuffers;
+    private Thread writerThread;
+    private volatile IOException failure; // the first error of the writer thread, reported to the command thread
+
+    /***
+     * Constructor to open the output file and start the writer thread.
+     * @param fileName The path of the output file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public LogWriter(String fileName) throws IOException{
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.fullBuffers = new MySpscRing<>(BUFFER_COUNT + 1);
+        this.emptyBuffers = new MySpscRing<>(BUFFER_COUNT);
+        for (int i = 1; i < BUFFER_COUNT; i++){
+            emptyBuffers.put(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+        this.current = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.writerThread = new Thread(this::drain, "log-writer");
+        this.writerThread.setDaemon(true); // a crashed command thread must not leave the program waiting on the log
+        this.writerThread.start();
+    }
+
+    /***
+     * Writes full buffers to the file until the end marker arrives. Runs on the writer thread.
+     * After an error the buffers are still given back unwritten, so the command thread never waits forever.
+     */
+    private void drain(){
+        while (true){
+            ByteBuffer buffer = fullBuffers.take();
+            if (buffer == END){
+                return;
+            }
+            if (failure == null){
+                try {
+                    buffer.flip();
+                    while (buffer.hasRemaining()){
+                        channel.write(buffer);
+                    }
+                } catch (Throwable e){ // not only I/O errors, or the writer would die and leave the producer waiting
+                    failure = e instanceof IOException ? (IOException) e : new IOException("Writing the log failed", e);
+                }
+            }
+            buffer.clear();
+            emptyBuffers.put(buffer);
+        }
+    }
+
+    /***
+     * Hands the current buffer to the writer thread and takes an empty one.
+     * @throws IOException If the writer thread failed.
+     */
+    private void handOff() throws IOException{
+        checkFailure();
+        fullBuffers.put(current);
+        current = emptyBuffers.take();
+    }
+
+    /***
+     * Throws the error of the writer thread, if any.
+     * @throws IOException If the writer thread failed.
+     */
+    private void checkFailure() throws IOException{
+        if (failure != null){
+            throw failure;
+        }
+    }
+
+    /***
+     * Appends a single byte to the log.
+     * @param b The byte to be appended.
+     * @throws IOException If the writer thread failed.
+     */
+    @Override
+    protected void put(int b) throws IOException{
+        if (!current.hasRemaining()){
+            handOff();
+        }
+        current.put((byte) b);
+    }
+
+    /***
+     * Appends a range of bytes to the log, copying as much as fits into the current buffer at once.
+     * @param bytes The array holding the bytes.
+     * @param offset The index of the first byte to be appended.
+     * @param length The number of bytes to be appended.
+     * @throws IOException If the writer thread failed.
+     */
+    @Override
+    protected void put(byte[] bytes, int offset, int length) throws IOException{
+        while (length > 0){
+            if (!current.hasRemaining()){
+                handOff();
+            }
+            int count = Math.min(length, current.remaining());
+            current.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /***
+     * Writes the remaining log lines, stops the writer thread and closes the output file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close() throws IOException{
+        try {
+            if (current.position() > 0){
+                handOff();
+            }
+            fullBuffers.put(END);
+            writerThread.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the log", e);
+        } finally {
+            channel.close();
+        }
+        checkFailure();
+    }
+}
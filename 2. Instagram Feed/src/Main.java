@@ -8,239 +8,325 @@ import java.util.ArrayList;
  */
 public class Main {
     public static void main(String[] args) {
-//        long start = System.currentTimeMillis();
         String inputName = args[0];
         String outputName = args[1];
+        boolean pipelined = false; // read and parse the input on separate threads
+        int shards = 0; // number of worker threads executing the commands, 0 to execute them on this thread
+        String snapshotIn = null; // snapshot to restore the platform from before the commands
+        String snapshotOut = null; // snapshot to write the platform to after the commands
+        String walName = null; // write-ahead log of the mutating commands
+        long walCheckpoint = 1_000_000; // records of the write-ahead log between checkpoints
+        String metricsName = null; // report of the latencies and errors of each command type
+        int fanOut = 0; // follower threshold of hybrid feed delivery, 0 to merge all feeds when they are read
+        boolean offHeapPosts = false; // keep post contents and like counts in a post store outside the heap
+        String postArenaName = null; // scratch file the post store maps contents from, null for direct memory
+        for (int i = 2; i < args.length; i++){
+            if (args[i].equals("--pipeline")){
+                pipelined = true;
+            } else if (args[i].startsWith("--shards=")){
+                shards = Integer.parseInt(args[i].substring("--shards=".length()));
+            } else if (args[i].startsWith("--snapshot-in=")){
+                snapshotIn = args[i].substring("--snapshot-in=".length());
+            } else if (args[i].startsWith("--snapshot-out=")){
+                snapshotOut = args[i].substring("--snapshot-out=".length());
+            } else if (args[i].startsWith("--wal=")){
+                walName = args[i].substring("--wal=".length());
+            } else if (args[i].startsWith("--wal-checkpoint=")){
+                walCheckpoint = Long.parseLong(args[i].substring("--wal-checkpoint=".length()));
+            } else if (args[i].startsWith("--metrics=")){
+                metricsName = args[i].substring("--metrics=".length());
+            } else if (args[i].startsWith("--fanout=")){
+                fanOut = Integer.parseInt(args[i].substring("--fanout=".length()));
+            } else if (args[i].equals("--post-store")){
+                offHeapPosts = true;
+            } else if (args[i].startsWith("--post-store=")){
+                offHeapPosts = true;
+                postArenaName = args[i].substring("--post-store=".length());
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+            }
+        }
 
-        MyHashMap<String, User> users = new MyHashMap<>(10); // a global hashmap to keep all users in the platform
-        MyHashMap<String, Post> posts = new MyHashMap<>(10); // a global hashmap to keep all posts in the platform
+        if (fanOut > 0 && shards > 0){
+            // pushing a post writes the inboxes of followers on other shards
+            System.err.println("Error: --fanout cannot be combined with --shards");
+            return;
+        }
 
         try{
-            BufferedReader reader = new BufferedReader(new FileReader(inputName));
-            BufferedWriter writer = new BufferedWriter(new FileWriter(outputName));
-            String line;
-            String[] parts;
+            WriteAheadLog wal = walName != null ? new WriteAheadLog(walName, inputName, walCheckpoint) : null;
+            // keeps all users and posts in the platform by their integer handles
+            // a checkpoint of the log already includes the state restored from the input snapshot
+            Platform platform = wal != null ? wal.readCheckpoint() : null;
+            if (platform == null){
+                platform = snapshotIn != null ? Snapshot.read(snapshotIn) : new Platform(10);
+            }
+            if (fanOut > 0){
+                platform.enableFanOut(fanOut);
+            }
+            PostStore postStore = null;
+            if (offHeapPosts){
+                postStore = postArenaName != null ? new PostStore(postArenaName) : new PostStore();
+                platform.usePostStore(postStore);
+            }
+            long applied = wal != null ? wal.recover(platform) : 0; // commands applied by a run that stopped midway
+            LogWriter log = new LogWriter(outputName); // writes the log on its own thread
+            Metrics metrics = metricsName != null ? new Metrics() : null;
+            LogBuffer output = new LogBuffer(); // output of the current command while it is being timed
+            // the engine is created before the parser thread of the pipeline starts interning IDs
+            ShardedEngine engine = shards > 0 ? new ShardedEngine(platform, shards, log, metrics) : null;
+            CommandSource source = pipelined ? new CommandPipeline(inputName, platform, wal != null)
+                    : new CommandReader(inputName, platform, wal != null);
+            Command command;
+            long sequence = 0; // number of the current command in the input
 
             // Read each line from the input file and execute commands accordingly
-            while ((line = reader.readLine()) != null){
-                parts = line.split(" ");
-                String command = parts[0];
-
-                switch (command){
-                    case "create_user":
-                        createUser(users, parts[1], writer);
-                        break;
-                    case "follow_user":
-                        followUser(users, parts[1], parts[2], writer);
-                        break;
-                    case "unfollow_user":
-                        unfollowUser(users, parts[1], parts[2], writer);
-                        break;
-                    case "create_post":
-                        createPost(users, posts, parts[1], parts[2], parts[3], writer);
-                        break;
-                    case "see_post":
-                        seePost(users, posts, parts[1], parts[2], writer);
-                        break;
-                    case "see_all_posts_from_user":
-                        seeAllPostsFromUser(users, parts[1], parts[2], writer);
-                        break;
-                    case "toggle_like":
-                        toggleLike(users, posts, parts[1], parts[2], writer);
-                        break;
-                    case "generate_feed":
-                        generateFeed(users, posts, parts[1], Integer.parseInt(parts[2]), writer);
-                        break;
-                    case "scroll_through_feed":
-                        ArrayList<Integer> likeActions = new ArrayList<>();
-                        for (int i = 3; i < parts.length; i++){
-                            likeActions.add(Integer.parseInt(parts[i])); // to get which post is liked
-                        }
-                        scrollThroughFeed(users, posts, parts[1], Integer.parseInt(parts[2]), likeActions, writer);
-                        break;
-                    case "sort_posts":
-                        sortPosts(users, posts, parts[1], writer);
-                        break;
-                    default:
-                        System.out.println("Unknown command");
-                        break;
+            while ((command = source.next()) != null){
+                if (++sequence <= applied){
+                    continue; // already recovered from the write-ahead log
                 }
+                if (wal != null && command.isMutating()){
+                    wal.append(sequence, command);
+                }
+                if (engine != null){
+                    engine.submit(command);
+                } else if (metrics != null){
+                    output.clear();
+                    long start = System.nanoTime();
+                    execute(platform, command, output);
+                    metrics.record(command.getType(), System.nanoTime() - start, output);
+                    output.writeTo(log);
+                } else {
+                    execute(platform, command, log);
+                }
+                if (wal != null && wal.isCheckpointDue()){
+                    if (engine != null){
+                        engine.drain();
+                    }
+                    wal.checkpoint(platform, sequence);
+                }
+            }
+            if (engine != null){
+                engine.close();
+            }
+            source.close();
+            if (metrics != null){
+                metrics.finish();
+                if (platform.getDelivery() != null){
+                    platform.getDelivery().reportTo(metrics);
+                }
+                if (postStore != null){
+                    metrics.addCounter("post content bytes off heap", postStore.getContentBytes());
+                }
+                metrics.write(metricsName);
             }
 
-            reader.close();
-            writer.close();
+            if (snapshotOut != null){
+                Snapshot.write(platform, snapshotOut, sequence);
+            }
+            log.close();
+            if (wal != null){
+                wal.clear(); // the run is complete, so a run on the same log starts over
+                wal.close();
+            }
+            if (postStore != null){
+                postStore.close();
+            }
         } catch (IOException e){
             System.err.println("Error: " + e.getMessage());
         }
+    }
 
-//        long end = System.currentTimeMillis();
-//        double duration = (double) (end - start) / 1000;
-//        System.out.println(duration + " seconds last");
+    /***
+     * Executes a parsed command.
+     * @param platform The platform keeping all users and posts
+     * @param command The parsed command
+     * @param log LogSink to write output messages to.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void execute(Platform platform, Command command, LogSink log) throws IOException{
+        switch (command.getType()){
+            case Command.CREATE_USER:
+                createUser(platform, command.userHandle, command.name, log);
+                break;
+            case Command.FOLLOW_USER:
+                followUser(platform, command.userHandle, command.targetHandle, log);
+                break;
+            case Command.UNFOLLOW_USER:
+                unfollowUser(platform, command.userHandle, command.targetHandle, log);
+                break;
+            case Command.CREATE_POST:
+                createPost(platform, command.userHandle, command.targetHandle, command.name, command.content, log);
+                break;
+            case Command.SEE_POST:
+                seePost(platform, command.userHandle, command.targetHandle, log);
+                break;
+            case Command.SEE_ALL_POSTS_FROM_USER:
+                seeAllPostsFromUser(platform, command.userHandle, command.targetHandle, log);
+                break;
+            case Command.TOGGLE_LIKE:
+                toggleLike(platform, command.userHandle, command.targetHandle, log);
+                break;
+            case Command.GENERATE_FEED:
+                generateFeed(platform, command.userHandle, command.number, log);
+                break;
+            case Command.SCROLL_THROUGH_FEED:
+                scrollThroughFeed(platform, command.userHandle, command.number, command.likeActions, command.likeCount, log);
+                break;
+            case Command.SORT_POSTS:
+                sortPosts(platform, command.userHandle, log);
+                break;
+            default:
+                System.out.println("Unknown command");
+                break;
+        }
     }
 
     /***
      * Creates a new user with the given user ID.
-     * @param users The hashmap of all users in the platform
+     * @param platform The platform keeping all users and posts
+     * @param userHandle The handle of the unique ID for the new user
      * @param userID The unique ID for the new user
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void createUser(MyHashMap<String, User> users, String userID, BufferedWriter writer) throws IOException{
+    private static void createUser(Platform platform, int userHandle, String userID, LogSink log) throws IOException{
         // if the user already exists
-        if (users.containsKey(userID)){
-            writer.write("Some error occurred in create_user.\n");
+        if (platform.getUser(userHandle) != null){
+            log.append("Some error occurred in create_user.\n");
         } else {
-            users.put(userID, new User(userID));
-            writer.write("Created user with Id " + userID + ".\n");
+            User user = new User(userHandle, userID);
+            platform.addUser(user);
+            log.append("Created user with Id ").append(user.getUserID()).append(".\n");
         }
     }
 
     /***
      * Makes a user follow another user
-     * @param users The hashmap of all users in the platform
-     * @param userID1 The ID of the user who will follow another user
-     * @param userID2 The ID of the user to be followed
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param platform The platform keeping all users and posts
+     * @param userHandle1 The handle of the user who will follow another user
+     * @param userHandle2 The handle of the user to be followed
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void followUser(MyHashMap<String, User> users, String userID1, String userID2, BufferedWriter writer) throws IOException{
-        // if users are not existing or they are the same
-        if (!users.containsKey(userID1) || !users.containsKey(userID2) || userID1.equals(userID2)){
-            writer.write("Some error occurred in follow_user.\n");
-            return;
-        }
-        User user1 = users.get(userID1);
-        User user2 = users.get(userID2);
+    private static void followUser(Platform platform, int userHandle1, int userHandle2, LogSink log) throws IOException{
+        User user1 = platform.getUser(userHandle1);
+        User user2 = platform.getUser(userHandle2);
 
-        if (user1 == null || user2 == null || user1.getUserID().equals(user2.getUserID()) || user1.getFollowing().containsKey(userID2)){
-            writer.write("Some error occurred in follow_user.\n");
+        // if users are not existing, they are the same or the first one already follows the second one
+        if (user1 == null || user2 == null || user1 == user2 || user1.isFollowing(user2)){
+            log.append("Some error occurred in follow_user.\n");
         } else{
             user1.follow(user2);
-            writer.write(userID1 + " followed " + userID2 + ".\n");
+            log.append(user1.getUserID()).append(" followed ").append(user2.getUserID()).append(".\n");
         }
     }
 
     /***
      * Makes a user unfollow another user
-     * @param users The hashmap of all users in the platform
-     * @param userID1 The ID of the user who will unfollow another user
-     * @param userID2 The ID of the user to be unfollowed
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param platform The platform keeping all users and posts
+     * @param userHandle1 The handle of the user who will unfollow another user
+     * @param userHandle2 The handle of the user to be unfollowed
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void unfollowUser(MyHashMap<String, User> users, String userID1, String userID2, BufferedWriter writer) throws IOException{
-        // if users are not existing or they are the same
-        if (!users.containsKey(userID1) || !users.containsKey(userID2) || userID1.equals(userID2)){
-            writer.write("Some error occurred in unfollow_user.\n");
-            return;
-        }
-        User user1 = users.get(userID1);
-        User user2 = users.get(userID2);
+    private static void unfollowUser(Platform platform, int userHandle1, int userHandle2, LogSink log) throws IOException{
+        User user1 = platform.getUser(userHandle1);
+        User user2 = platform.getUser(userHandle2);
 
-        if (user1 == null || user2 == null || user1.getUserID().equals(user2.getUserID()) || !user1.getFollowing().containsKey(userID2)){
-            writer.write("Some error occurred in unfollow_user.\n");
+        // if users are not existing, they are the same or the first one does not follow the second one
+        if (user1 == null || user2 == null || user1 == user2 || !user1.isFollowing(user2)){
+            log.append("Some error occurred in unfollow_user.\n");
         } else{
             user1.unfollow(user2);
-            writer.write(userID1 + " unfollowed " + userID2 + ".\n");
+            log.append(user1.getUserID()).append(" unfollowed ").append(user2.getUserID()).append(".\n");
         }
     }
 
     /***
      * Creates a new post for the user.
-     * @param users The hashmap of all users in platform
-     * @param posts The hashmap of all posts in platform
-     * @param userID The ID of the user creating the post
-     * @param postID The ID of the post to be created
+     * @param platform The platform keeping all users and posts
+     * @param userHandle The handle of the user creating the post
+     * @param postHandle The handle of the post to be created
+     * @param postID The unique ID of the post to be created
      * @param content The content of the post
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void createPost(MyHashMap<String, User> users, MyHashMap<String, Post> posts, String userID,
-                                   String postID, String content,BufferedWriter writer) throws IOException{
-        if (!users.containsKey(userID)){
-            writer.write("Some error occurred in create_post.\n");
+    private static void createPost(Platform platform, int userHandle, int postHandle, String postID, String content,
+                                   LogSink log) throws IOException{
+        User user = platform.getUser(userHandle);
+        // if the user does not exist or the post already exists
+        if (user == null || platform.getPost(postHandle) != null){
+            log.append("Some error occurred in create_post.\n");
             return;
         }
-        // if the post already exists
-        if (posts.containsKey(postID)){
-            writer.write("Some error occurred in create_post.\n");
-            return;
-        }
-        User user = users.get(userID);
-        Post post = new Post(postID, content, user);
-
-        user.createPost(postID, content);
-        posts.put(postID, post);
-        writer.write(userID + " created a post with Id " + postID + ".\n");
+        Post post = user.createPost(postHandle, postID, content);
+        platform.addPost(post);
+        log.append(user.getUserID()).append(" created a post with Id ").append(post.getPostID()).append(".\n");
     }
 
     /***
      * Marks a post as seen by a user
-     * @param users The hashmap of all users in platform
-     * @param posts The hashmap of all posts in platform
-     * @param userID The ID of the user who has seen the post
-     * @param postID The ID of the post that has been seen
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param platform The platform keeping all users and posts
+     * @param userHandle The handle of the user who has seen the post
+     * @param postHandle The handle of the post that has been seen
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void seePost(MyHashMap<String, User> users, MyHashMap<String, Post> posts, String userID,
-                                String postID, BufferedWriter writer) throws  IOException{
-        if (!users.containsKey(userID) || !posts.containsKey(postID)){
-            writer.write("Some error occurred in see_post.\n");
+    private static void seePost(Platform platform, int userHandle, int postHandle, LogSink log) throws  IOException{
+        User user = platform.getUser(userHandle);
+        Post post = platform.getPost(postHandle);
+        if (user == null || post == null){
+            log.append("Some error occurred in see_post.\n");
             return;
         }
-        User user = users.get(userID);
-        Post post = posts.get(postID);
         user.addSeen(post);
-        writer.write(userID + " saw " + postID + ".\n");
+        log.append(user.getUserID()).append(" saw ").append(post.getPostID()).append(".\n");
     }
 
     /***
      * Marks all posts from a specific user as seen by another user.
-     * @param users The hashmap of all users in platform
-     * @param viewerID The ID of the user viewing the posts
-     * @param viewedID The ID of the user whose posts are being viewed
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param platform The platform keeping all users and posts
+     * @param viewerHandle The handle of the user viewing the posts
+     * @param viewedHandle The handle of the user whose posts are being viewed
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void seeAllPostsFromUser(MyHashMap<String, User> users, String viewerID, String viewedID, BufferedWriter writer) throws  IOException{
-        if (!users.containsKey(viewerID) || !users.containsKey(viewedID)){
-            writer.write("Some error occurred in see_all_posts_from_user.\n");
+    private static void seeAllPostsFromUser(Platform platform, int viewerHandle, int viewedHandle, LogSink log) throws  IOException{
+        User viewer = platform.getUser(viewerHandle);
+        User viewed = platform.getUser(viewedHandle);
+        if (viewer == null || viewed == null){
+            log.append("Some error occurred in see_all_posts_from_user.\n");
             return;
         }
-        User viewer = users.get(viewerID);
-        User viewed = users.get(viewedID);
-        for (Post post: viewed.getPosts().values()){
-            viewer.addSeen(post);
-        }
-        writer.write(viewerID + " saw all posts of " + viewedID + ".\n");
+        viewer.addSeenAll(viewed);
+        log.append(viewer.getUserID()).append(" saw all posts of ").append(viewed.getUserID()).append(".\n");
     }
 
     /***
      * Toggles the like status of a post for a user
-     * @param users The hashmap of all users in platform
-     * @param posts The hashmap of all posts in platform
-     * @param userID The ID of the user toggling the like
-     * @param postID The ID of the post to be liked or unliked
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param platform The platform keeping all users and posts
+     * @param userHandle The handle of the user toggling the like
+     * @param postHandle The handle of the post to be liked or unliked
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void toggleLike(MyHashMap<String, User> users, MyHashMap<String, Post> posts, String userID,
-                                   String postID, BufferedWriter writer) throws  IOException{
-        if (!users.containsKey(userID) || !posts.containsKey(postID)){
-            writer.write("Some error occurred in toggle_like.\n");
+    private static void toggleLike(Platform platform, int userHandle, int postHandle, LogSink log) throws  IOException{
+        User user = platform.getUser(userHandle);
+        Post post = platform.getPost(postHandle);
+        if (user == null || post == null){
+            log.append("Some error occurred in toggle_like.\n");
             return;
         }
-        User user = users.get(userID);
-        Post post = posts.get(postID);
 
         // if the user has already liked the post unlike it, otherwise like it
         if (post.isLikedBy(user)){
             post.unlike(user);
-            writer.write(userID + " unliked " + postID + ".\n");
+            log.append(user.getUserID()).append(" unliked ").append(post.getPostID()).append(".\n");
         } else {
             post.like(user);
-            writer.write(userID + " liked " + postID + ".\n");
+            log.append(user.getUserID()).append(" liked ").append(post.getPostID()).append(".\n");
         }
         user.addSeen(post); // mark the post as seen after like/unlike
 
@@ -248,74 +334,65 @@ public class Main {
 
     /***
      * Generates a feed for a user.
-     * @param users The hashmap of all users in platform
-     * @param posts The hashmap of all posts in platform
-     * @param userID The ID of the user whose feed is generated
+     * @param platform The platform keeping all users and posts
+     * @param userHandle The handle of the user whose feed is generated
      * @param num The number of posts to include in the feed
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void generateFeed(MyHashMap<String, User> users, MyHashMap<String, Post> posts, String userID,
-                                     int num, BufferedWriter writer) throws IOException{
-        if (!users.containsKey(userID)){
-            writer.write("Some error occurred in generate_feed.\n");
+    private static void generateFeed(Platform platform, int userHandle, int num, LogSink log) throws IOException{
+        User user = platform.getUser(userHandle);
+        if (user == null){
+            log.append("Some error occurred in generate_feed.\n");
             return;
         }
-        User user = users.get(userID);
-        MyPriorityQueue<Post> feedHeap = user.getFeed(posts);
-        int count = 0; // keeps the post count in feed
+        ArrayList<Post> feed = user.getFeed(num); // the most liked unseen posts come first
 
-        writer.write("Feed for " + userID + ":\n");
-        while (!feedHeap.isEmpty() && count < num){
-            Post post = feedHeap.poll(); // gets the most liked post first
-            if (!user.getSeenPosts().containsKey(post.getPostID()) && !post.getAuthor().equals(user)){
-                writer.write("Post ID: " + post.getPostID() + ", Author: " + post.getAuthor().getUserID() + ", Likes: " + post.getLikeCount() + "\n");
-                count++;
-            }
+        log.append("Feed for ").append(user.getUserID()).append(":\n");
+        for (Post post : feed){
+            log.append("Post ID: ").append(post.getPostID()).append(", Author: ").append(post.getAuthor().getUserID()).append(", Likes: ").append(post.getLikeCount()).append("\n");
         }
 
-        if (count < num){
-            writer.write("No more posts available for " + userID + ".\n");
+        if (feed.size() < num){
+            log.append("No more posts available for ").append(user.getUserID()).append(".\n");
         }
 
     }
 
     /***
-     * Scrolls through a user's feed, liking posts as specified by the likeActions list.
-     * @param users The hashmap of all users in platform
-     * @param posts The hashmap of all posts in platform
-     * @param userID The ID of the user scrolling through the feed
+     * Scrolls through a user's feed, liking posts as specified by the likeActions array.
+     * @param platform The platform keeping all users and posts
+     * @param userHandle The handle of the user scrolling through the feed
      * @param num The number of posts the user scrolls through
-     * @param likeActions A list of integers indicating whether the user likes each post (1 for like, 0 for no like)
-     * @param writer BufferedWriter to write output messages to the output file.
+     * @param likeActions An array of integers indicating whether the user likes each post (1 for like, 0 for no like)
+     * @param likeCount The number of valid like actions in the array
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void scrollThroughFeed(MyHashMap<String, User> users, MyHashMap<String, Post> posts, String userID, int num,
-                                          ArrayList<Integer> likeActions, BufferedWriter writer) throws IOException{
-        if (!users.containsKey(userID)){
-            writer.write("Some error occurred in scroll_through_feed.\n");
+    private static void scrollThroughFeed(Platform platform, int userHandle, int num,
+                                          int[] likeActions, int likeCount, LogSink log) throws IOException{
+        User user = platform.getUser(userHandle);
+        if (user == null){
+            log.append("Some error occurred in scroll_through_feed.\n");
             return;
         }
-        User user = users.get(userID);
-        MyPriorityQueue<Post> feedHeap = user.getFeed(posts);
+        String userID = user.getUserID();
+        ArrayList<Post> feed = user.scrollFeed(num); // the feed is taken before any like changes the order
         int count = 0; // keeps the seen post count in feed
 
-        writer.write(userID + " is scrolling through feed:\n");
-        while (!feedHeap.isEmpty() && count < num){
-            Post post = feedHeap.poll(); // gets the most liked post first
-            if (!post.isSeenBy(user) && !post.getAuthor().equals(user)){
-                if (likeActions.get(count) == 1){
-                    post.like(user);
-                    writer.write(userID + " saw " + post.getPostID() + " while scrolling and clicked the like button.\n");
-                } else {
-                    writer.write(userID + " saw " + post.getPostID() + " while scrolling.\n");
-                }
+        log.append(userID).append(" is scrolling through feed:\n");
+        for (Post post : feed){
+            if (count < likeCount && likeActions[count] == 1){
+                post.like(user);
+                log.append(userID).append(" saw ").append(post.getPostID()).append(" while scrolling and clicked the like button.\n");
+            } else {
+                log.append(userID).append(" saw ").append(post.getPostID()).append(" while scrolling.\n");
             }
             user.addSeen(post);
             count++;
         }
         if (count < num){
-            writer.write("No more posts in feed.\n");
+            log.append("No more posts in feed.\n");
         }
 
     }
@@ -323,32 +400,27 @@ public class Main {
     /***
      * Sorts all posts made by a user in descending order based on likes.
      * If the like counts are equal, posts are sorted lexicographically by post ID.
-     * @param users   The hash map of all users in the platform.
-     * @param userID  The ID of the user whose posts are to be sorted.
-     * @param writer  BufferedWriter to write output messages to the output file.
+     * @param platform The platform keeping all users and posts
+     * @param userHandle The handle of the user whose posts are to be sorted.
+     * @param log LogSink to write output messages to.
      * @throws IOException If an I/O error occurs.
      */
-    private static void sortPosts(MyHashMap<String, User> users, MyHashMap<String, Post> posts, String userID, BufferedWriter writer) throws IOException{
-        if (!users.containsKey(userID)){
-            writer.write("Some error occurred in sort_posts.\n");
+    private static void sortPosts(Platform platform, int userHandle, LogSink log) throws IOException{
+        User user = platform.getUser(userHandle);
+        if (user == null){
+            log.append("Some error occurred in sort_posts.\n");
             return;
         }
-        User user = users.get(userID);
-        ArrayList<Post> userPosts = user.getPosts().values();
+        MySortedList<Post> rankedPosts = user.getRankedPosts(); // kept in order by every like and unlike
 
-        if (userPosts.isEmpty()){
-            writer.write("No posts from " + userID + ".\n");
+        if (rankedPosts.size() == 0){
+            log.append("No posts from ").append(user.getUserID()).append(".\n");
             return;
         }
-        MyPriorityQueue<Post> sortHeap = new MyPriorityQueue<>(userPosts.size() + 1);
-        for (Post post : userPosts){
-            post = posts.get(post.getPostID()); // get the post in the global hashmap instead of a copy of it
-            sortHeap.add(post);
-        }
-        writer.write("Sorting " + userID + "'s posts:\n");
-        while (!sortHeap.isEmpty()){
-            Post post = sortHeap.poll();
-            writer.write(post.getPostID() + ", Likes: " + post.getLikeCount() + "\n");
+        log.append("Sorting ").append(user.getUserID()).append("'s posts:\n");
+        for (int i = 0; i < rankedPosts.size(); i++){
+            Post post = rankedPosts.get(i);
+            log.append(post.getPostID()).append(", Likes: ").append(post.getLikeCount()).append("\n");
         }
     }
 }
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/***
+ * Counts the commands and errors of a run and keeps a latency histogram for every command type, so the command types
+ * behind slow runs and long tails can be found. A command counts as an error if its output is an error message.
+ * The report gives the throughput of the run and the mean, median, 99th, 99.9th percentile and largest latency of each
+ * command type.
+ */
+public class Metrics {
+    private static final byte[] ERROR_PREFIX = "Some error occurred in ".getBytes(StandardCharsets.US_ASCII);
+
+    private LatencyHistogram[] latencies = new LatencyHistogram[Command.NAMES.length];
+    private long[] errors = new long[Command.NAMES.length];
+    private ArrayList<String> counterNames = new ArrayList<>(); // further counters reported after the latencies
+    private ArrayList<Long> counterValues = new ArrayList<>();
+    private long startNanos;
+    private long endNanos;
+
+    /***
+     * Constructor to start measuring the run.
+     */
+    public Metrics(){
+        for (int type = 0; type < latencies.length; type++){
+            latencies[type] = new LatencyHistogram();
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    /***
+     * Records an executed command.
+     * @param type The type of the command.
+     * @param nanos The time the command took to execute.
+     * @param output The output of the command.
+     */
+    public void record(int type, long nanos, LogBuffer output){
+        latencies[type].record(nanos);
+        if (output.startsWith(ERROR_PREFIX)){
+            errors[type]++;
+        }
+    }
+
+    /***
+     * Adds a counter to the report, e.g. one kept by another part of the run.
+     * @param name The name of the counter.
+     * @param value The value of the counter.
+     */
+    public void addCounter(String name, long value){
+        counterNames.add(name);
+        counterValues.add(value);
+    }
+
+    /***
+     * Stops measuring the run, so the time spent after the last command is not counted in the throughput.
+     */
+    public void finish(){
+        endNanos = System.nanoTime();
+    }
+
+    /***
+     * Writes the report to a file.
+     * @param fileName The path of the report file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(String fileName) throws IOException{
+        if (endNanos == 0){
+            finish();
+        }
+        LatencyHistogram all = new LatencyHistogram();
+        long allErrors = 0;
+        for (int type = 0; type < latencies.length; type++){
+            all.add(latencies[type]);
+            allErrors += errors[type];
+        }
+        double seconds = (endNanos - startNanos) / 1e9;
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(fileName)))){
+            writer.printf(Locale.ROOT, "commands: %d, errors: %d, time: %.3f s, throughput: %.0f commands/s%n",
+                    all.getCount(), allErrors, seconds, seconds > 0 ? all.getCount() / seconds : 0);
+            writer.printf(Locale.ROOT, "%-24s %10s %10s %10s %10s %10s %10s %10s%n", "command", "count", "errors",
+                    "mean us", "p50 us", "p99 us", "p999 us", "max us");
+            for (int type = 0; type < latencies.length; type++){
+                if (latencies[type].getCount() > 0){
+                    writeRow(writer, Command.NAMES[type], latencies[type], errors[type]);
+                }
+            }
+            writeRow(writer, "all", all, allErrors);
+            for (int i = 0; i < counterNames.size(); i++){
+                writer.printf(Locale.ROOT, "%s: %d%n", counterNames.get(i), counterValues.get(i));
+            }
+        }
+    }
+
+    /***
+     * Writes the line of one command type.
+     * @param writer The writer of the report.
+     * @param name The name of the command type.
+     * @param latency The latencies of the command type.
+     * @param errorCount The number of errors of the command type.
+     */
+    private static void writeRow(PrintWriter writer, String name, LatencyHistogram latency, long errorCount){
+        writer.printf(Locale.ROOT, "%-24s %10d %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", name, latency.getCount(),
+                errorCount, latency.getMean() / 1e3, latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3,
+                latency.getPercentile(99.9) / 1e3, latency.getMax() / 1e3);
+    }
+}
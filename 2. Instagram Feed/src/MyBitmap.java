@@ -0,0 +1,535 @@
+import java.nio.ByteBuffer;
+
+/***
+ * A custom compressed bitmap implementation for sets of non-negative integer handles.
+ * Like Roaring bitmaps, the values are split into chunks by their high 16 bits. A chunk with few values keeps them in
+ * a sorted char array, and a dense chunk switches to a 65536-bit bitmap, so a set costs about two bytes per value
+ * at most instead of a hash table entry.
+ */
+public class MyBitmap {
+    private static final int ARRAY_LIMIT = 4096; // an array chunk with more values than this becomes a bitmap chunk
+    private static final int BITMAP_WORDS = 1024; // 65536 bits
+    private static final char[] EMPTY_KEYS = new char[0];
+    private static final Object[] EMPTY_CHUNKS = new Object[0];
+    private static final int[] EMPTY_COUNTS = new int[0];
+
+    private char[] keys; // high 16 bits of the values in each chunk, in ascending order
+    private Object[] chunks; // either a sorted char[] of low 16 bits or a long[] bitmap of them
+    private int[] counts; // number of values in each chunk
+    private int chunkCount;
+    private int currentSize;
+
+    /***
+     * Constructor to initialize an empty bitmap.
+     * No chunk is allocated until the first value is added.
+     */
+    public MyBitmap(){
+        this.keys = EMPTY_KEYS;
+        this.chunks = EMPTY_CHUNKS;
+        this.counts = EMPTY_COUNTS;
+        this.chunkCount = 0;
+        this.currentSize = 0;
+    }
+
+    /***
+     * Finds the chunk with the given high bits using binary search.
+     * @param key The high 16 bits of a value.
+     * @return The index of the chunk, or -(insertion point) - 1 if there is no such chunk.
+     */
+    private int findChunk(char key){
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key){
+                low = mid + 1;
+            } else if (keys[mid] > key){
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /***
+     * Finds a low 16-bit value in an array chunk using binary search.
+     * @param array The sorted array chunk.
+     * @param count The number of values in the chunk.
+     * @param low The low 16 bits to search for.
+     * @return The index of the value, or -(insertion point) - 1 if it is not in the chunk.
+     */
+    private static int findLow(char[] array, int count, char low){
+        int from = 0;
+        int to = count - 1;
+        while (from <= to){
+            int mid = (from + to) >>> 1;
+            if (array[mid] < low){
+                from = mid + 1;
+            } else if (array[mid] > low){
+                to = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(from + 1);
+    }
+
+    /***
+     * Adds a value to the bitmap.
+     * @param value The non-negative value to be added.
+     * @return True if the value was not in the bitmap before, false otherwise.
+     */
+    public boolean add(int value){
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = findChunk(key);
+        if (index < 0){
+            index = -index - 1;
+            insertChunk(index, key);
+        }
+        int count = counts[index];
+        if (chunks[index] instanceof long[]){
+            long[] bits = (long[]) chunks[index];
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) != 0){
+                return false;
+            }
+            bits[low >>> 6] |= mask;
+        } else {
+            char[] array = (char[]) chunks[index];
+            int position = findLow(array, count, low);
+            if (position >= 0){
+                return false;
+            }
+            position = -position - 1;
+            if (count == ARRAY_LIMIT){
+                // the chunk is too dense for an array, switch it to a bitmap
+                long[] bits = toBits(array, count);
+                bits[low >>> 6] |= 1L << low;
+                chunks[index] = bits;
+            } else {
+                if (count == array.length){
+                    char[] newArray = new char[Math.min(array.length * 2, ARRAY_LIMIT)];
+                    System.arraycopy(array, 0, newArray, 0, count);
+                    array = newArray;
+                    chunks[index] = array;
+                }
+                System.arraycopy(array, position, array, position + 1, count - position);
+                array[position] = low;
+            }
+        }
+        counts[index]++;
+        currentSize++;
+        return true;
+    }
+
+    /***
+     * Removes a value from the bitmap if it is present.
+     * @param value The value to be removed.
+     * @return True if the value was in the bitmap, false otherwise.
+     */
+    public boolean remove(int value){
+        int index = findChunk((char) (value >>> 16));
+        if (index < 0){
+            return false;
+        }
+        char low = (char) value;
+        int count = counts[index];
+        if (chunks[index] instanceof long[]){
+            long[] bits = (long[]) chunks[index];
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0){
+                return false;
+            }
+            bits[low >>> 6] &= ~mask;
+            if (count - 1 <= ARRAY_LIMIT / 2){
+                // back to an array only well below the limit, so values around the limit do not convert every time
+                chunks[index] = toArray(bits, count - 1);
+            }
+        } else {
+            char[] array = (char[]) chunks[index];
+            int position = findLow(array, count, low);
+            if (position < 0){
+                return false;
+            }
+            System.arraycopy(array, position + 1, array, position, count - position - 1);
+        }
+        currentSize--;
+        if (--counts[index] == 0){
+            removeChunk(index);
+        }
+        return true;
+    }
+
+    /***
+     * Checks if the bitmap contains the specified value.
+     * @param value The value to check.
+     * @return True if the value is in the bitmap, false otherwise.
+     */
+    public boolean contains(int value){
+        int index = findChunk((char) (value >>> 16));
+        if (index < 0){
+            return false;
+        }
+        char low = (char) value;
+        if (chunks[index] instanceof long[]){
+            return (((long[]) chunks[index])[low >>> 6] & (1L << low)) != 0;
+        }
+        return findLow((char[]) chunks[index], counts[index], low) >= 0;
+    }
+
+    /***
+     * Checks if every value of another bitmap is in this bitmap, that is, if other AND-NOT this is empty.
+     * Bitmap chunks are compared a 64-bit word at a time.
+     * @param other The bitmap to check.
+     * @return True if the other bitmap is a subset of this bitmap, false otherwise.
+     */
+    public boolean containsAll(MyBitmap other){
+        if (other.currentSize > currentSize){
+            return false;
+        }
+        for (int i = 0; i < other.chunkCount; i++){
+            int index = findChunk(other.keys[i]);
+            if (index < 0 || other.counts[i] > counts[index]){
+                return false;
+            }
+            Object mine = chunks[index];
+            Object theirs = other.chunks[i];
+            if (theirs instanceof long[] && mine instanceof long[]){
+                long[] theirBits = (long[]) theirs;
+                long[] myBits = (long[]) mine;
+                for (int w = 0; w < BITMAP_WORDS; w++){
+                    if ((theirBits[w] & ~myBits[w]) != 0){
+                        return false;
+                    }
+                }
+            } else if (theirs instanceof long[]){
+                long[] theirBits = (long[]) theirs;
+                for (int w = 0; w < BITMAP_WORDS; w++){
+                    long word = theirBits[w];
+                    while (word != 0){
+                        char low = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                        if (findLow((char[]) mine, counts[index], low) < 0){
+                            return false;
+                        }
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] theirArray = (char[]) theirs;
+                for (int j = 0; j < other.counts[i]; j++){
+                    char low = theirArray[j];
+                    boolean found = (mine instanceof long[])
+                            ? (((long[]) mine)[low >>> 6] & (1L << low)) != 0
+                            : findLow((char[]) mine, counts[index], low) >= 0;
+                    if (!found){
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /***
+     * Creates a bitmap of the values of this bitmap that are not in another one, that is, this AND-NOT other.
+     * Bitmap chunks are combined a 64-bit word at a time.
+     * @param other The bitmap whose values are left out.
+     * @return A new bitmap with the values of this bitmap missing from the other.
+     */
+    public MyBitmap andNot(MyBitmap other){
+        MyBitmap result = new MyBitmap();
+        for (int i = 0; i < chunkCount; i++){
+            int index = other.findChunk(keys[i]);
+            Object mine = chunks[i];
+            if (index < 0){
+                result.appendChunk(keys[i], copyChunk(mine, counts[i]), counts[i]);
+                continue;
+            }
+            Object theirs = other.chunks[index];
+            if (mine instanceof long[]){
+                long[] bits = ((long[]) mine).clone();
+                int count = 0;
+                if (theirs instanceof long[]){
+                    long[] theirBits = (long[]) theirs;
+                    for (int w = 0; w < BITMAP_WORDS; w++){
+                        bits[w] &= ~theirBits[w];
+                        count += Long.bitCount(bits[w]);
+                    }
+                } else {
+                    char[] theirArray = (char[]) theirs;
+                    for (int j = 0; j < other.counts[index]; j++){
+                        bits[theirArray[j] >>> 6] &= ~(1L << theirArray[j]);
+                    }
+                    for (int w = 0; w < BITMAP_WORDS; w++){
+                        count += Long.bitCount(bits[w]);
+                    }
+                }
+                if (count > ARRAY_LIMIT){
+                    result.appendChunk(keys[i], bits, count);
+                } else if (count > 0){
+                    result.appendChunk(keys[i], toArray(bits, count), count);
+                }
+            } else {
+                char[] array = (char[]) mine;
+                char[] kept = new char[Math.max(counts[i], 4)];
+                int count = 0;
+                for (int j = 0; j < counts[i]; j++){
+                    char low = array[j];
+                    boolean found = (theirs instanceof long[])
+                            ? (((long[]) theirs)[low >>> 6] & (1L << low)) != 0
+                            : findLow((char[]) theirs, other.counts[index], low) >= 0;
+                    if (!found){
+                        kept[count++] = low;
+                    }
+                }
+                if (count > 0){
+                    result.appendChunk(keys[i], kept, count);
+                }
+            }
+        }
+        return result;
+    }
+
+    /***
+     * Adds every value of another bitmap to this bitmap, that is, this OR other, merging chunk by chunk.
+     * @param other The bitmap whose values are added.
+     * @return The number of values that were not in this bitmap before.
+     */
+    public int addAll(MyBitmap other){
+        int added = 0;
+        for (int i = 0; i < other.chunkCount; i++){
+            Object theirs = other.chunks[i];
+            int theirCount = other.counts[i];
+            int index = findChunk(other.keys[i]);
+            if (index < 0){
+                index = -index - 1;
+                insertChunk(index, other.keys[i]);
+                chunks[index] = copyChunk(theirs, theirCount);
+                counts[index] = theirCount;
+                added += theirCount;
+                continue;
+            }
+            Object mine = chunks[index];
+            int count;
+            if (mine instanceof long[] || theirs instanceof long[] || counts[index] + theirCount > ARRAY_LIMIT){
+                long[] bits = mine instanceof long[] ? (long[]) mine : toBits((char[]) mine, counts[index]);
+                if (theirs instanceof long[]){
+                    long[] theirBits = (long[]) theirs;
+                    for (int w = 0; w < BITMAP_WORDS; w++){
+                        bits[w] |= theirBits[w];
+                    }
+                } else {
+                    char[] theirArray = (char[]) theirs;
+                    for (int j = 0; j < theirCount; j++){
+                        bits[theirArray[j] >>> 6] |= 1L << theirArray[j];
+                    }
+                }
+                count = 0;
+                for (int w = 0; w < BITMAP_WORDS; w++){
+                    count += Long.bitCount(bits[w]);
+                }
+                // the union may have fewer values than the limit when the arrays overlap
+                chunks[index] = count > ARRAY_LIMIT ? bits : toArray(bits, count);
+            } else {
+                char[] array = (char[]) mine;
+                char[] theirArray = (char[]) theirs;
+                char[] merged = new char[Math.max(counts[index] + theirCount, 4)];
+                int a = 0;
+                int b = 0;
+                count = 0;
+                while (a < counts[index] || b < theirCount){
+                    if (b == theirCount || (a < counts[index] && array[a] < theirArray[b])){
+                        merged[count++] = array[a++];
+                    } else if (a == counts[index] || theirArray[b] < array[a]){
+                        merged[count++] = theirArray[b++];
+                    } else {
+                        merged[count++] = array[a++];
+                        b++;
+                    }
+                }
+                chunks[index] = merged;
+            }
+            added += count - counts[index];
+            counts[index] = count;
+        }
+        currentSize += added;
+        return added;
+    }
+
+    /***
+     * Gets the number of values in the bitmap.
+     * @return The size of the bitmap.
+     */
+    public int size(){
+        return currentSize;
+    }
+
+    /***
+     * Gets the number of bytes the bitmap takes when written to a buffer.
+     * @return The number of bytes written by writeTo.
+     */
+    public int serializedSize(){
+        int bytes = 4;
+        for (int i = 0; i < chunkCount; i++){
+            bytes += 7 + (chunks[i] instanceof long[] ? BITMAP_WORDS * 8 : counts[i] * 2);
+        }
+        return bytes;
+    }
+
+    /***
+     * Writes the bitmap to a buffer chunk by chunk, copying each chunk at once.
+     * @param buffer The buffer with at least serializedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer){
+        buffer.putInt(chunkCount);
+        for (int i = 0; i < chunkCount; i++){
+            buffer.putChar(keys[i]);
+            buffer.putInt(counts[i]);
+            if (chunks[i] instanceof long[]){
+                buffer.put((byte) 1);
+                buffer.asLongBuffer().put((long[]) chunks[i]);
+                buffer.position(buffer.position() + BITMAP_WORDS * 8);
+            } else {
+                buffer.put((byte) 0);
+                buffer.asCharBuffer().put((char[]) chunks[i], 0, counts[i]);
+                buffer.position(buffer.position() + counts[i] * 2);
+            }
+        }
+    }
+
+    /***
+     * Reads a bitmap written by writeTo from a buffer.
+     * @param buffer The buffer positioned at the start of the bitmap, positioned after it on return.
+     * @return The bitmap read.
+     */
+    public static MyBitmap readFrom(ByteBuffer buffer){
+        MyBitmap bitmap = new MyBitmap();
+        int chunkCount = buffer.getInt();
+        if (chunkCount > 0){
+            bitmap.keys = new char[chunkCount];
+            bitmap.chunks = new Object[chunkCount];
+            bitmap.counts = new int[chunkCount];
+        }
+        for (int i = 0; i < chunkCount; i++){
+            bitmap.keys[i] = buffer.getChar();
+            int count = buffer.getInt();
+            if (buffer.get() == 1){
+                long[] bits = new long[BITMAP_WORDS];
+                buffer.asLongBuffer().get(bits);
+                buffer.position(buffer.position() + BITMAP_WORDS * 8);
+                bitmap.chunks[i] = bits;
+            } else {
+                char[] array = new char[Math.max(count, 4)];
+                buffer.asCharBuffer().get(array, 0, count);
+                buffer.position(buffer.position() + count * 2);
+                bitmap.chunks[i] = array;
+            }
+            bitmap.counts[i] = count;
+            bitmap.currentSize += count;
+        }
+        bitmap.chunkCount = chunkCount;
+        return bitmap;
+    }
+
+    /***
+     * Inserts an empty array chunk at the given position.
+     * @param index The position of the new chunk.
+     * @param key The high 16 bits of the values in the new chunk.
+     */
+    private void insertChunk(int index, char key){
+        if (chunkCount == keys.length){
+            int newLength = Math.max(keys.length * 2, 1);
+            char[] newKeys = new char[newLength];
+            Object[] newChunks = new Object[newLength];
+            int[] newCounts = new int[newLength];
+            System.arraycopy(keys, 0, newKeys, 0, chunkCount);
+            System.arraycopy(chunks, 0, newChunks, 0, chunkCount);
+            System.arraycopy(counts, 0, newCounts, 0, chunkCount);
+            keys = newKeys;
+            chunks = newChunks;
+            counts = newCounts;
+        }
+        System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+        System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+        System.arraycopy(counts, index, counts, index + 1, chunkCount - index);
+        keys[index] = key;
+        chunks[index] = new char[4];
+        counts[index] = 0;
+        chunkCount++;
+    }
+
+    /***
+     * Appends a chunk whose key is larger than the keys of all chunks in the bitmap.
+     * @param key The high 16 bits of the values in the chunk.
+     * @param chunk The array or bitmap chunk, owned by this bitmap from now on.
+     * @param count The number of values in the chunk.
+     */
+    private void appendChunk(char key, Object chunk, int count){
+        insertChunk(chunkCount, key);
+        chunks[chunkCount - 1] = chunk;
+        counts[chunkCount - 1] = count;
+        currentSize += count;
+    }
+
+    /***
+     * Copies a chunk, so two bitmaps never share one.
+     * @param chunk The array or bitmap chunk.
+     * @param count The number of values in the chunk.
+     * @return A copy of the chunk.
+     */
+    private static Object copyChunk(Object chunk, int count){
+        if (chunk instanceof long[]){
+            return ((long[]) chunk).clone();
+        }
+        char[] array = new char[Math.max(count, 4)];
+        System.arraycopy((char[]) chunk, 0, array, 0, count);
+        return array;
+    }
+
+    /***
+     * Removes an empty chunk at the given position.
+     * @param index The position of the chunk.
+     */
+    private void removeChunk(int index){
+        System.arraycopy(keys, index + 1, keys, index, chunkCount - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+        System.arraycopy(counts, index + 1, counts, index, chunkCount - index - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+    }
+
+    /***
+     * Converts an array chunk to a bitmap chunk.
+     * @param array The sorted array chunk.
+     * @param count The number of values in the chunk.
+     * @return The bitmap chunk with the same values.
+     */
+    private static long[] toBits(char[] array, int count){
+        long[] bits = new long[BITMAP_WORDS];
+        for (int i = 0; i < count; i++){
+            bits[array[i] >>> 6] |= 1L << array[i];
+        }
+        return bits;
+    }
+
+    /***
+     * Converts a bitmap chunk to an array chunk.
+     * @param bits The bitmap chunk.
+     * @param count The number of values in the chunk.
+     * @return The sorted array chunk with the same values.
+     */
+    private static char[] toArray(long[] bits, int count){
+        char[] array = new char[Math.max(count, 4)];
+        int position = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++){
+            long word = bits[w];
+            while (word != 0){
+                array[position++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+}
@@ -1,87 +1,100 @@
 import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /***
  * A custom HashMap implementation
+ * Uses open addressing with linear probing over parallel key and value arrays, so no entry object is allocated per put.
+ * Most maps stay small, so the arrays are allocated lazily and grow with the map: an empty map shares one empty array,
+ * a map of at most SMALL_LIMIT entries keeps them packed in insertion order and is searched linearly without hashing,
+ * and only a map growing past that becomes a hash table, of at least the capacity it was created with.
  * @param <K> The type of keys maintained by this map
  * @param <V> The type of mapped values
  */
 public class MyHashMap<K, V> {
-    /***
-     * Represents an entry in the hashmap with a key-value pair
-     * @param <K> The type of keys
-     * @param <V> The type of values
-     */
-    private class MyEntry<K, V>{
-        K key;
-        V value;
-
-        MyEntry<K, V> next;
-
-        /***
-         * Constructor to initialize a key-value pair.
-         * @param key The key of the entry.
-         * @param value The value of the entry.
-         */
-        MyEntry(K key, V value){
-            this.key = key;
-            this.value = value;
-            this.next = null;
-        }
-    }
-
-    private MyEntry<K, V>[] buckets;
-    private int capacity;
+    private Object[] keys; // a null key marks an empty slot
+    private Object[] values;
+    private int mask; // table length - 1, the table length is always a power of two, -1 while the map is small
+    private int shift; // 32 - log2(table length), for taking the index from the high bits of the hash
     private int currentSize;
+    private int capacity; // table length to start with once the map outgrows the small arrays
     private static final double LOAD_FACTOR_THRESHOLD = 0.75; // threshold for triggering resizing
+    private static final int SMALL_LIMIT = 8; // entries kept in the small arrays before the map becomes a hash table
+    private static final Object[] EMPTY = new Object[0]; // shared by all empty maps
 
     /***
      * Constructor to initalize the hashmap with a given capacity.
+     * No table is allocated until the map outgrows the small arrays, the table length is then rounded up to the next
+     * power of two.
      * @param capacity The initial capacity of the hashmap
      */
-    @SuppressWarnings("unchecked")
     public MyHashMap(int capacity){
-        this.capacity = capacity;
+        int length = 2 * SMALL_LIMIT; // the smallest table still holds the small entries below the load factor
+        while (length < capacity){
+            length <<= 1;
+        }
+        this.keys = EMPTY;
+        this.values = EMPTY;
+        this.mask = -1;
+        this.capacity = length;
         this.currentSize = 0;
-        this.buckets = (MyEntry<K, V>[]) new MyEntry[capacity];
     }
 
     /***
      * Calculates the index for a given key using its hash code.
+     * The hash code is multiplied by the golden ratio so that close hash codes are spread over the whole table
+     * and the highest bits of the product are taken as the index.
      * @param key The key to calculate index for
-     * @return The index within the bucket array.
+     * @return The index within the table.
+     */
+    private int getIndex(Object key){
+        return (key.hashCode() * 0x9E3779B9) >>> shift;
+    }
+
+    /***
+     * Finds the slot of a key by probing linearly from its index, or by scanning the entries of a small map.
+     * @param key The key to search for.
+     * @return The slot holding the key, or the empty slot where the search ended, which is the end of the entries of a
+     * small map and may be past its arrays.
      */
-    private int getIndex(K key){
-        return Math.abs(key.hashCode()) % capacity;
+    private int findSlot(Object key){
+        if (mask < 0){
+            int index = 0;
+            while (index < currentSize && !keys[index].equals(key)){
+                index++;
+            }
+            return index;
+        }
+        int index = getIndex(key);
+        while (keys[index] != null && !keys[index].equals(key)){
+            index = (index + 1) & mask;
+        }
+        return index;
     }
 
     /***
      * Adds a key-value pair to the hashmap. If the key already exists, updates its value.
-     * Handles collisions using separate chaining, linked list.
+     * Handles collisions using linear probing.
      * @param key The key to be added.
      * @param value The value to be associated with the key.
      */
     public void put(K key, V value){
-        // check if the current load factor exceeds the threshold and resizing is needed.
-        if ((double) currentSize / capacity >= LOAD_FACTOR_THRESHOLD){
-            resize();
+        int index = findSlot(key);
+        if (index < keys.length && keys[index] != null){
+            values[index] = value;
+            return;
         }
-        int index = getIndex(key);
-        MyEntry<K, V> head = buckets[index];
-
-        // iterate through the linked list to find if the key already exists
-        while (head != null){
-            if (head.key.equals(key)){
-                head.value = value;
-                return;
-            }
-            head = head.next;
+        if (mask < 0){
+            putSmall(key, value);
+            return;
         }
-        // add new entry at the beginning of the linked list
+        keys[index] = key;
+        values[index] = value;
         currentSize++;
-        head = buckets[index];
-        MyEntry<K, V> newNode = new MyEntry<>(key, value);
-        newNode.next = head;
-        buckets[index] = newNode;
+        // check if the current load factor exceeds the threshold and resizing is needed.
+        if (currentSize >= LOAD_FACTOR_THRESHOLD * keys.length){
+            resize();
+        }
     }
 
     /***
@@ -89,19 +102,10 @@ public class MyHashMap<K, V> {
      * @param key The key whose value is to be returned.
      * @return The value associated with the key, or null if the key is not found.
      */
+    @SuppressWarnings("unchecked")
     public V get(K key){
-        int index = getIndex(key);
-        MyEntry<K, V> head = buckets[index];
-
-        // iterate through the linked list to find the key
-        while (head != null){
-            if (head.key.equals(key)){
-                return head.value;
-            }
-            head = head.next;
-        }
-
-        return null;
+        int index = findSlot(key);
+        return index < values.length ? (V) values[index] : null; // an empty slot holds a null value
     }
 
     /***
@@ -110,81 +114,184 @@ public class MyHashMap<K, V> {
      * @return True if this map contains the specified key, false otherwise.
      */
     public boolean containsKey(K key){
-        int index = getIndex(key);
-        MyEntry<K, V> head = buckets[index];
-
-        while (head != null){
-            if (head.key.equals(key)){
-                return true;
-            }
-            head = head.next;
-        }
-        return false;
+        int index = findSlot(key);
+        return index < keys.length && keys[index] != null;
     }
 
     /***
      * Removes the mapping for a key from this map if it is present
-     * Adjusts the linked list to maintain structure after removal.
+     * Shifts the following entries of the probe sequence back, so no tombstone is left behind. The entries of a small
+     * map after the removed one move back by one, keeping them packed and in insertion order.
      * @param key The key whose mapping is to be removed
      */
     public void remove(K key){
-        int index = getIndex(key);
-        MyEntry<K, V> head = buckets[index];
-        MyEntry<K, V> prev = null;
-
-        while (head != null){
-            if (head.key.equals(key)){
-                if (prev != null){
-                    prev.next = head.next;
-                } else {
-                    buckets[index] = head.next;
-                }
-                currentSize--;
-                return;
+        int hole = findSlot(key);
+        if (hole >= keys.length || keys[hole] == null){
+            return;
+        }
+        currentSize--;
+        if (mask < 0){
+            System.arraycopy(keys, hole + 1, keys, hole, currentSize - hole);
+            System.arraycopy(values, hole + 1, values, hole, currentSize - hole);
+            keys[currentSize] = null;
+            values[currentSize] = null;
+            return;
+        }
+        int index = hole;
+        while (true){
+            index = (index + 1) & mask;
+            if (keys[index] == null){
+                break;
+            }
+            int home = getIndex(keys[index]);
+            // move the entry into the hole unless its home slot lies cyclically between the hole and the entry
+            if (((index - home) & mask) >= ((index - hole) & mask)){
+                keys[hole] = keys[index];
+                values[hole] = values[index];
+                hole = index;
             }
-            prev = head;
-            head = head.next;
         }
+        keys[hole] = null;
+        values[hole] = null;
     }
 
+    /***
+     * Appends an entry with a new key to a small map, doubling its arrays when they are full, or turns the map into a
+     * hash table once it would exceed SMALL_LIMIT entries.
+     * @param key The new key.
+     * @param value The value to be associated with the key.
+     */
+    @SuppressWarnings("unchecked")
+    private void putSmall(K key, V value){
+        if (currentSize == SMALL_LIMIT){
+            Object[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new Object[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            shift = Integer.numberOfLeadingZeros(mask);
+            currentSize = 0;
+            for (int i = 0; i < SMALL_LIMIT; i++){
+                put((K) oldKeys[i], (V) oldValues[i]);
+            }
+            put(key, value);
+            return;
+        }
+        if (currentSize == keys.length){
+            int length = Math.max(SMALL_LIMIT / 2, currentSize * 2);
+            Object[] newKeys = new Object[length];
+            Object[] newValues = new Object[length];
+            System.arraycopy(keys, 0, newKeys, 0, currentSize);
+            System.arraycopy(values, 0, newValues, 0, currentSize);
+            keys = newKeys;
+            values = newValues;
+        }
+        keys[currentSize] = key;
+        values[currentSize] = value;
+        currentSize++;
+    }
 
     /***
      * Resizes the hashmap when the load factor exceeds the threshold.
-     * Doubles and adds 1 to the capacity and rehashes all entries to new bucket locations.
+     * Doubles the table length and reinserts all entries to their new slots.
      */
-    @SuppressWarnings("unchecked")
     private void resize(){
-        int newCapacity = capacity * 2 + 1;
-        MyEntry<K, V>[] newBuckets = (MyEntry<K, V>[]) new MyEntry[newCapacity];
-
-        // rehash all entries into the new buckets.
-        for (int i = 0; i < capacity; i++){
-            MyEntry<K, V> head = buckets[i];
-            while (head != null){
-                MyEntry<K, V> next = head.next;
-                int newIndex = Math.abs(head.key.hashCode()) % newCapacity;
-                head.next = newBuckets[newIndex];
-                newBuckets[newIndex] = head;
-                head = next;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        mask = keys.length - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+
+        // rehash all entries into the new table.
+        for (int i = 0; i < oldKeys.length; i++){
+            if (oldKeys[i] != null){
+                int index = getIndex(oldKeys[i]);
+                while (keys[index] != null){
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
             }
         }
-        buckets = newBuckets;
-        capacity = newCapacity;
     }
 
     /***
      * Retrieves all values stored in the hashmap.
+     * The values of a small map are in insertion order, those of a hash table in table order.
      * @return An ArrayList of all values in the map.
      */
+    @SuppressWarnings("unchecked")
     public ArrayList<V> values(){
-        ArrayList<V> valuesList = new ArrayList<>();
-        for (int i = 0; i < capacity; i++){
-            MyEntry<K, V> head = buckets[i];
-            while (head != null){
-                valuesList.add(head.value);
-                head = head.next;
+        ArrayList<V> valuesList = new ArrayList<>(currentSize);
+        for (int i = 0; i < keys.length; i++){
+            if (keys[i] != null){
+                valuesList.add((V) values[i]);
             }
         }
         return valuesList;
     }
+
+    /***
+     * Performs an action for every entry of the hashmap, in the same order as values(), without copying the entries.
+     * @param action The action to be performed with each key and value, which must not change the map.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action){
+        Object[] keys = this.keys;
+        Object[] values = this.values;
+        for (int i = 0; i < keys.length; i++){
+            if (keys[i] != null){
+                action.accept((K) keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /***
+     * Performs an action for every key of the hashmap, in the same order as values(), without copying the keys.
+     * @param action The action to be performed with each key, which must not change the map.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachKey(Consumer<? super K> action){
+        Object[] keys = this.keys;
+        for (int i = 0; i < keys.length; i++){
+            if (keys[i] != null){
+                action.accept((K) keys[i]);
+            }
+        }
+    }
+
+    /***
+     * Performs an action for every value of the hashmap, in the same order as values(), without copying the values.
+     * @param action The action to be performed with each value, which must not change the map.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action){
+        Object[] keys = this.keys;
+        Object[] values = this.values;
+        for (int i = 0; i < keys.length; i++){
+            if (keys[i] != null){
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    /***
+     * Gets the number of entries in the hashmap.
+     * @return The number of key-value mappings in the map.
+     */
+    public int size(){
+        return currentSize;
+    }
+
+    /***
+     * Returns the value of the specified key if it is in the map, otherwise returns the provided default value.
+     * @param key The key whose value is to be returned
+     * @param defaultVal The default value to return if the map doesn't have given key
+     * @return The value associated with the specified key, or defaultVal if no mapping exists.
+     */
+    public V getOrDefault(K key, V defaultVal){
+        V val = get(key);
+        return (val == null) ? defaultVal : val;
+    }
 }
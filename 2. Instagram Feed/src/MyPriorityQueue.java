@@ -1,5 +1,7 @@
 /***
  * A custom priority queue implementation using a max-heap.
+ * Subclasses can track the position of every element through placed, so an element can be moved after its ordering
+ * key changed, or removed, in O(log n).
  * @param <T> The type of elements held in this priority queue. Must be comparable.
  */
 public class MyPriorityQueue<T extends Comparable<T>> {
@@ -30,8 +32,9 @@ public class MyPriorityQueue<T extends Comparable<T>> {
      * A method to maintain the max-heap property by percolating an element up.
      * It is called after adding a new element to restore the max-heap property.
      * @param index The index of the element to percolate up.
+     * @return The index the element ends up at.
      */
-    private void percolateUp(int index){
+    private int percolateUp(int index){
         while (index > 1){
             int parent = index / 2;
             if (heap[index].compareTo(heap[parent]) > 0){
@@ -39,11 +42,14 @@ public class MyPriorityQueue<T extends Comparable<T>> {
                 T temp = heap[index];
                 heap[index] = heap[parent];
                 heap[parent] = temp;
+                placed(heap[index], index);
+                placed(temp, parent);
                 index = parent;
             } else {
                 break;
             }
         }
+        return index;
     }
 
     /***
@@ -69,6 +75,8 @@ public class MyPriorityQueue<T extends Comparable<T>> {
             T temp = heap[index];
             heap[index] = heap[largest];
             heap[largest] = temp;
+            placed(heap[index], index);
+            placed(temp, largest);
             percolateDown(largest);
         }
     }
@@ -82,6 +90,7 @@ public class MyPriorityQueue<T extends Comparable<T>> {
             resize(); // if the heap is full, resize
         }
         heap[++currentSize] = item;
+        placed(item, currentSize);
         percolateUp(currentSize); // to keep the max-heap property
     }
 
@@ -94,12 +103,61 @@ public class MyPriorityQueue<T extends Comparable<T>> {
             return null;
         }
         T item = heap[1];
-        heap[1] = heap[currentSize];
-        currentSize--;
-        percolateDown(1); // to keep the max-heap property
+        remove(1);
         return item;
     }
 
+    /***
+     * Removes the element at a position of the heap array, e.g. one whose position is tracked through placed.
+     * @param index The position of the element, 1 being the root.
+     */
+    public void remove(int index){
+        T item = heap[index];
+        heap[index] = heap[currentSize];
+        heap[currentSize--] = null;
+        placed(item, 0);
+        if (index <= currentSize){
+            placed(heap[index], index);
+            update(index); // the last element may belong above or below the removed one
+        }
+    }
+
+    /***
+     * Moves the element at a position of the heap array to its place after its ordering key changed.
+     * The keys of all other elements must be unchanged.
+     * @param index The position of the element, 1 being the root.
+     */
+    public void update(int index){
+        percolateDown(percolateUp(index));
+    }
+
+    /***
+     * Called whenever an element is put at a position of the heap array, or taken out of the queue, so subclasses can
+     * track the positions of their elements. Does nothing by default.
+     * @param item The element.
+     * @param index The new position of the element, or 0 if it was taken out.
+     */
+    protected void placed(T item, int index){
+        // positions are not tracked by default
+    }
+
+
+    /***
+     * Gets the element at a position of the heap array without removing it, so the heap can be walked as a tree.
+     * @param index The position, 1 being the root and 2 * index and 2 * index + 1 the children of a position.
+     * @return The element at the position.
+     */
+    public T get(int index){
+        return heap[index];
+    }
+
+    /***
+     * Gets the number of elements in the priority queue.
+     * @return The size of the priority queue.
+     */
+    public int size(){
+        return currentSize;
+    }
 
     /***
      * Checks if the priority queue is empty.
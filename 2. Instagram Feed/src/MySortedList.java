@@ -0,0 +1,234 @@
+import java.util.function.ToIntFunction;
+
+/***
+ * A custom sorted list implementation keeping its elements in descending order.
+ * Elements are located with binary search, so the index of an element must be found before its ordering key
+ * changes, and the element is then moved to its new place with reposition, like the update-key operation of an
+ * indexed heap.
+ * On request the list also keeps the elements touched by its last few changes, so the holder of a position can find
+ * it again with a binary search instead of starting over. A holder that finds too few changes kept can ask for more,
+ * so a list that changes often between reads keeps a longer log.
+ * @param <T> The type of elements held in this list. Must be comparable.
+ */
+public class MySortedList<T extends Comparable<T>> {
+    private static final int CHANGE_LOG = 16; // changes kept at first, a power of two
+    private static final int MAX_CHANGE_LOG = 1024; // changes kept at most
+
+    private T[] elements;
+    private int currentSize;
+    private int modCount; // number of changes so far, so holders of positions in the list notice changes
+    private T[] changes; // element added or moved by each of the last changes by modCount, null for removals
+    private int changesFrom; // modification count from which every change is kept
+
+    /***
+     * Constructor to initialize the sorted list with given capacity.
+     * @param capacity the initial capacity of the sorted list.
+     */
+    @SuppressWarnings("unchecked")
+    public MySortedList(int capacity){
+        elements = (T[]) new Comparable<?>[Math.max(capacity, 1)];
+        currentSize = 0;
+    }
+
+    /***
+     * Resize the element array when it becomes full.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(){
+        T[] newElements = (T[]) new Comparable<?>[elements.length * 2];
+        System.arraycopy(elements, 0, newElements, 0, currentSize);
+        elements = newElements;
+    }
+
+    /***
+     * Finds the first index whose element is smaller than the given item.
+     * @param item The item to search for.
+     * @return The index where the item is or would be inserted.
+     */
+    private int lowerBound(T item){
+        int low = 0;
+        int high = currentSize;
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (elements[mid].compareTo(item) > 0){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /***
+     * Adds an item to its place in the sorted list.
+     * @param item The item to be added.
+     */
+    public void add(T item){
+        if (currentSize == elements.length){
+            resize(); // if the array is full, resize
+        }
+        int index = lowerBound(item);
+        System.arraycopy(elements, index, elements, index + 1, currentSize - index);
+        elements[index] = item;
+        currentSize++;
+        changed(item);
+    }
+
+    /***
+     * Removes an item from the sorted list if it is present.
+     * @param item The item to be removed.
+     */
+    public void remove(T item){
+        int index = lowerBound(item);
+        if (index < currentSize && elements[index].compareTo(item) == 0){
+            System.arraycopy(elements, index + 1, elements, index, currentSize - index - 1);
+            elements[--currentSize] = null;
+            changed(null);
+        }
+    }
+
+    /***
+     * Finds the index of an item.
+     * @param item The item to search for, with the ordering key it has in the list.
+     * @return The index of the item, or -1 if it is not in the list.
+     */
+    public int indexOf(T item){
+        int index = lowerBound(item);
+        return index < currentSize && elements[index].compareTo(item) == 0 ? index : -1;
+    }
+
+    /***
+     * Moves an element to its new place after its ordering key changed, shifting only the elements between its old
+     * and new places. When a like changes a post by one, those are only posts with its old or new like count, so the
+     * move costs O(log n) comparisons plus one copy of the ties it passes.
+     * @param index The index the element had before its key changed.
+     */
+    public void reposition(int index){
+        T item = elements[index];
+        changed(item); // the key changed even if the element stays in place
+        int low = 0;
+        int high = index;
+        if (index + 1 < currentSize && elements[index + 1].compareTo(item) > 0){
+            low = index + 1; // the element moves towards the end
+            high = currentSize;
+        } else if (index == 0 || elements[index - 1].compareTo(item) >= 0){
+            return; // still in order
+        }
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (elements[mid].compareTo(item) > 0){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low > index){
+            System.arraycopy(elements, index + 1, elements, index, low - index - 1);
+            elements[low - 1] = item;
+        } else {
+            System.arraycopy(elements, low, elements, low + 1, index - low);
+            elements[low] = item;
+        }
+    }
+
+    /***
+     * Finds the first index whose element is not greater than a key, e.g. the key an element had earlier.
+     * @param comparison Compares an element with the key, giving a positive number if the element is greater.
+     * @return The index where an element equal to the key is or would be inserted.
+     */
+    public int indexAfter(ToIntFunction<? super T> comparison){
+        int low = 0;
+        int high = currentSize;
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (comparison.applyAsInt(elements[mid]) > 0){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /***
+     * Counts a change and keeps the element it touched if changes are kept.
+     * @param item The element added or moved, or null for a removal.
+     */
+    private void changed(T item){
+        if (changes != null){
+            changes[modCount & (changes.length - 1)] = item;
+        }
+        modCount++;
+    }
+
+    /***
+     * Starts keeping the elements touched by the last changes, if they are not kept yet.
+     */
+    @SuppressWarnings("unchecked")
+    public void keepChanges(){
+        if (changes == null){
+            changes = (T[]) new Comparable<?>[CHANGE_LOG];
+            changesFrom = modCount;
+        }
+    }
+
+    /***
+     * Doubles the number of changes kept, up to a maximum, e.g. after a holder found too few changes kept.
+     * Changes are kept from now on, the ones already dropped cannot come back.
+     */
+    @SuppressWarnings("unchecked")
+    public void keepMoreChanges(){
+        if (changes == null || changes.length == MAX_CHANGE_LOG){
+            return;
+        }
+        T[] newChanges = (T[]) new Comparable<?>[changes.length * 2];
+        changesFrom = Math.max(changesFrom, modCount - changes.length);
+        for (int count = changesFrom; count != modCount; count++){
+            newChanges[count & (newChanges.length - 1)] = changes[count & (changes.length - 1)];
+        }
+        changes = newChanges;
+    }
+
+    /***
+     * Checks whether all changes since a modification count are kept.
+     * @param since The modification count the changes are counted from.
+     * @return True if getChange can be called for every change since then, false otherwise.
+     */
+    public boolean hasChangesSince(int since){
+        return changes != null && since - changesFrom >= 0 && modCount - since <= changes.length;
+    }
+
+    /***
+     * Gets the element touched by a kept change.
+     * @param count The modification count just before the change.
+     * @return The element the change added or moved, or null if it removed one.
+     */
+    public T getChange(int count){
+        return changes[count & (changes.length - 1)];
+    }
+
+    /***
+     * Gets the element at the given rank.
+     * @param index The rank of the element, 0 being the largest.
+     * @return The element at the given rank.
+     */
+    public T get(int index){
+        return elements[index];
+    }
+
+    /***
+     * Gets the number of elements in the sorted list.
+     * @return The size of the sorted list.
+     */
+    public int size(){
+        return currentSize;
+    }
+
+    /***
+     * Gets the number of changes made to the sorted list, so a saved position can be checked for staleness.
+     * @return The modification count.
+     */
+    public int getModCount(){
+        return modCount;
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * A custom bounded ring buffer for passing items from exactly one producer thread to exactly one consumer thread.
+ * It is lock-free: the producer only writes the tail and the consumer only writes the head, and the volatile writes of
+ * these counters publish the slots between the threads. A thread that has to wait spins briefly and then parks.
+ * @param <T> The type of items passed through the ring.
+ */
+public class MySpscRing<T> {
+    private Object[] slots;
+    private int mask;
+    private volatile long head; // number of items taken so far, written only by the consumer
+    private volatile long tail; // number of items put so far, written only by the producer
+
+    /***
+     * Constructor to initialize an empty ring with given capacity.
+     * @param capacity The maximum number of items in the ring, rounded up to the next power of two.
+     */
+    public MySpscRing(int capacity){
+        int length = 2;
+        while (length < capacity){
+            length <<= 1;
+        }
+        this.slots = new Object[length];
+        this.mask = length - 1;
+    }
+
+    /***
+     * Puts an item to the ring if there is space. Called only by the producer thread.
+     * @param item The item to be put, must not be null.
+     * @return True if the item was put, false if the ring is full.
+     */
+    public boolean offer(T item){
+        long t = tail;
+        if (t - head == slots.length){
+            return false;
+        }
+        slots[(int) t & mask] = item;
+        tail = t + 1; // publishes the slot to the consumer
+        return true;
+    }
+
+    /***
+     * Takes the oldest item from the ring if there is one. Called only by the consumer thread.
+     * @return The oldest item, or null if the ring is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll(){
+        long h = head;
+        if (h == tail){
+            return null;
+        }
+        int index = (int) h & mask;
+        T item = (T) slots[index];
+        slots[index] = null;
+        head = h + 1; // gives the slot back to the producer
+        return item;
+    }
+
+    /***
+     * Puts an item to the ring, waiting while the ring is full. Called only by the producer thread.
+     * @param item The item to be put, must not be null.
+     */
+    public void put(T item){
+        int idle = 0;
+        while (!offer(item)){
+            idle = backOff(idle);
+        }
+    }
+
+    /***
+     * Takes the oldest item from the ring, waiting while the ring is empty. Called only by the consumer thread.
+     * @return The oldest item.
+     */
+    public T take(){
+        int idle = 0;
+        T item;
+        while ((item = poll()) == null){
+            idle = backOff(idle);
+        }
+        return item;
+    }
+
+    /***
+     * Waits a little before the next attempt, spinning first and parking after a while.
+     * @param idle The number of failed attempts so far.
+     * @return The number of failed attempts including this one.
+     */
+    private static int backOff(int idle){
+        if (idle < 100){
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+        return idle + 1;
+    }
+}
@@ -0,0 +1,197 @@
+/***
+ * Keeps all users and posts in the platform.
+ * User and post IDs are interned to dense integer handles when a command is read, and users and posts are
+ * stored in arrays indexed by their handles, so a string ID is hashed only once per command.
+ */
+public class Platform {
+    private IdDictionary userIds;
+    private IdDictionary postIds;
+    private User[] users; // users indexed by their handles, null if no user is created with that ID
+    private Post[] posts; // posts indexed by their handles, null if no post is created with that ID
+    private FollowGraph following; // whom each user follows
+    private FollowGraph followers; // who follows each user
+    private FeedDelivery delivery; // null if all feeds are merged when they are read
+    private PostStore postStore; // null if posts keep their content and like count on the heap
+
+    /***
+     * Constructor to initialize an empty platform with given capacity.
+     * @param capacity The initial capacity for users and posts.
+     */
+    public Platform(int capacity){
+        this.userIds = new IdDictionary(capacity);
+        this.postIds = new IdDictionary(capacity);
+        this.users = new User[capacity];
+        this.posts = new Post[capacity];
+        this.following = new FollowGraph(this, capacity);
+        this.followers = new FollowGraph(this, capacity);
+    }
+
+    /***
+     * Gets the dictionary of user IDs.
+     * @return The dictionary interning user IDs to handles.
+     */
+    public IdDictionary getUserIds(){
+        return userIds;
+    }
+
+    /***
+     * Gets the dictionary of post IDs.
+     * @return The dictionary interning post IDs to handles.
+     */
+    public IdDictionary getPostIds(){
+        return postIds;
+    }
+
+    /***
+     * Gets the user ID of a handle.
+     * @param handle The handle of the user ID.
+     * @return The user ID.
+     */
+    public String getUserID(int handle){
+        return userIds.getName(handle);
+    }
+
+    /***
+     * Gets the post ID of a handle.
+     * @param handle The handle of the post ID.
+     * @return The post ID.
+     */
+    public String getPostID(int handle){
+        return postIds.getName(handle);
+    }
+
+    /***
+     * Gets the user with the given handle.
+     * @param handle The handle of the user, or -1 for an unknown ID.
+     * @return The user, or null if there is no user with that handle.
+     */
+    public User getUser(int handle){
+        return handle >= 0 && handle < users.length ? users[handle] : null;
+    }
+
+    /***
+     * Gets the post with the given handle.
+     * @param handle The handle of the post, or -1 for an unknown ID.
+     * @return The post, or null if there is no post with that handle.
+     */
+    public Post getPost(int handle){
+        return handle >= 0 && handle < posts.length ? posts[handle] : null;
+    }
+
+    /***
+     * Checks whether a user with the given handle can be added without growing the user array.
+     * @param handle The handle of the user.
+     * @return True if the handle fits, false otherwise.
+     */
+    public boolean hasRoomForUser(int handle){
+        return handle < users.length;
+    }
+
+    /***
+     * Checks whether a post with the given handle can be added without growing the post array.
+     * @param handle The handle of the post.
+     * @return True if the handle fits, false otherwise.
+     */
+    public boolean hasRoomForPost(int handle){
+        return handle < posts.length;
+    }
+
+    /***
+     * Grows the user array and the follow graphs, at least doubling them, so a user with the given handle fits.
+     * @param handle The handle of the user.
+     */
+    public void makeRoomForUser(int handle){
+        if (handle >= users.length){
+            User[] newUsers = new User[Math.max(users.length * 2, handle + 1)];
+            System.arraycopy(users, 0, newUsers, 0, users.length);
+            users = newUsers;
+        }
+        following.makeRoomForUser(handle);
+        followers.makeRoomForUser(handle);
+    }
+
+    /***
+     * Grows the post array, at least doubling it, so a post with the given handle fits.
+     * @param handle The handle of the post.
+     */
+    public void makeRoomForPost(int handle){
+        if (handle >= posts.length){
+            Post[] newPosts = new Post[Math.max(posts.length * 2, handle + 1)];
+            System.arraycopy(posts, 0, newPosts, 0, posts.length);
+            posts = newPosts;
+        }
+    }
+
+    /***
+     * Adds a user to the platform and gives it the follow graphs of the platform.
+     * @param user The user to be added.
+     */
+    public void addUser(User user){
+        makeRoomForUser(user.getHandle());
+        users[user.getHandle()] = user;
+        user.setFollowGraphs(following, followers);
+        if (delivery != null){
+            delivery.attach(user);
+        }
+    }
+
+    /***
+     * Switches the platform to hybrid feed delivery, so authors with fewer followers than the threshold push their
+     * posts into the inboxes of their followers. The inboxes of the existing users are filled from their follows.
+     * @param threshold The number of followers from which an author's posts are merged when feeds are read.
+     */
+    public void enableFanOut(int threshold){
+        delivery = new FeedDelivery(threshold);
+        for (User user : users){
+            if (user != null){
+                delivery.attach(user);
+            }
+        }
+        for (User user : users){
+            if (user != null){
+                delivery.fillInbox(user);
+            }
+        }
+    }
+
+    /***
+     * Gets the feed delivery of the platform.
+     * @return The feed delivery, or null if all feeds are merged when they are read.
+     */
+    public FeedDelivery getDelivery(){
+        return delivery;
+    }
+
+    /***
+     * Adds a post to the platform.
+     * @param post The post to be added.
+     */
+    public void addPost(Post post){
+        makeRoomForPost(post.getHandle());
+        posts[post.getHandle()] = post;
+        if (postStore != null){
+            post.moveTo(postStore);
+        }
+    }
+
+    /***
+     * Keeps the content and like count of every post in a post store from now on, moving the existing posts there.
+     * @param store The post store.
+     */
+    public void usePostStore(PostStore store){
+        postStore = store;
+        for (Post post : posts){
+            if (post != null){
+                post.moveTo(store);
+            }
+        }
+    }
+
+    /***
+     * Gets the post store of the platform.
+     * @return The post store, or null if posts keep their content and like count on the heap.
+     */
+    public PostStore getPostStore(){
+        return postStore;
+    }
+}
@@ -1,28 +1,64 @@
 /***
  * A class representing an Instagram post.
  * Each post has an ID, content, an author, and keeps track of likes and views.
+ * A post moved to a post store keeps its content and like count there, outside the heap.
  */
 public class Post implements Comparable<Post> {
     private String postID;
-    private String content;
+    private int handle; // dense integer handle of the post ID, used as the key of the post in all maps
+    private String content; // null if the post is in a store
     private User author;
-    private int likeCount;
-    private MyHashMap<String, User> likedBy; // hashmap for keeping track of users who liked the post
-    private MyHashMap<String, User> seenBy; // hashmap for keeping track of users who saw the post
+    private int likeCount; // unused if the post is in a store
+    private PostStore store; // null if the content and like count are kept in this object
+    private MyBitmap likedBy; // bitmap of the handles of users who liked the post
+    private MyBitmap seenBy; // bitmap of the handles of users who saw the post
 
     /***
      * Constructor to initialize a post with an ID, content, and author.
+     * @param handle The dense integer handle of the post ID.
      * @param postID The unique ID of the post.
      * @param content The content of the post.
      * @param author The author of the post.
      */
-    public Post(String postID, String content, User author){
+    public Post(int handle, String postID, String content, User author){
         this.postID = postID;
+        this.handle = handle;
         this.content = content;
         this.author = author;
         this.likeCount = 0; // initially, the post has no like
-        this.likedBy = new MyHashMap<>(10);
-        this.seenBy = new MyHashMap<>(10);
+        this.likedBy = new MyBitmap();
+        this.seenBy = new MyBitmap();
+    }
+
+    /***
+     * Constructor to restore a post together with its likes and views, e.g. from a snapshot.
+     * @param handle The dense integer handle of the post ID.
+     * @param postID The unique ID of the post.
+     * @param content The content of the post.
+     * @param author The author of the post.
+     * @param likedBy The bitmap of the handles of users who liked the post.
+     * @param seenBy The bitmap of the handles of users who saw the post.
+     */
+    public Post(int handle, String postID, String content, User author, MyBitmap likedBy, MyBitmap seenBy){
+        this.postID = postID;
+        this.handle = handle;
+        this.content = content;
+        this.author = author;
+        this.likeCount = likedBy.size();
+        this.likedBy = likedBy;
+        this.seenBy = seenBy;
+    }
+
+    /***
+     * Moves the content and like count of the post to a post store.
+     * @param store The store keeping them from now on.
+     */
+    public void moveTo(PostStore store){
+        if (this.store == null){
+            store.add(handle, likeCount, content);
+            this.store = store;
+            this.content = null;
+        }
     }
 
     /***
@@ -33,6 +69,38 @@ public class Post implements Comparable<Post> {
         return postID;
     }
 
+    /***
+     * Gets the handle of the post ID.
+     * @return The dense integer handle of the post ID.
+     */
+    public int getHandle() {
+        return handle;
+    }
+
+    /***
+     * Gets the content of the post.
+     * @return The content of the post.
+     */
+    public String getContent() {
+        return store != null ? store.getContent(handle) : content;
+    }
+
+    /***
+     * Gets the users who liked the post.
+     * @return The bitmap of the handles of users who liked the post.
+     */
+    public MyBitmap getLikedBy() {
+        return likedBy;
+    }
+
+    /***
+     * Gets the users who saw the post.
+     * @return The bitmap of the handles of users who saw the post.
+     */
+    public MyBitmap getSeenBy() {
+        return seenBy;
+    }
+
     /***
      * Gets the author of the post.
      * @return The author of the post.
@@ -46,7 +114,19 @@ public class Post implements Comparable<Post> {
      * @return The like count of the post.
      */
     public int getLikeCount() {
-        return likeCount;
+        return store != null ? store.getLikeCount(handle) : likeCount;
+    }
+
+    /***
+     * Sets the number of likes of the post, in the store if the post is in one.
+     * @param likeCount The new like count.
+     */
+    private void setLikeCount(int likeCount){
+        if (store != null){
+            store.setLikeCount(handle, likeCount);
+        } else {
+            this.likeCount = likeCount;
+        }
     }
 
     /***
@@ -54,9 +134,17 @@ public class Post implements Comparable<Post> {
      * @param user The user who liked the post.
      */
     public void like(User user){
-        if (!likedBy.containsKey(user.getUserID())){
-            likedBy.put(user.getUserID(), user);
-            likeCount++;
+        if (likedBy.add(user.getHandle())){
+            FeedDelivery delivery = author.getDelivery();
+            int rank = author.getRankedPosts().indexOf(this); // found by its likes before they change
+            if (delivery != null){
+                delivery.beforeLikeChange(this); // the post is taken out of the inboxes holding it
+            }
+            setLikeCount(getLikeCount() + 1);
+            author.getRankedPosts().reposition(rank);
+            if (delivery != null){
+                delivery.afterLikeChange(this);
+            }
         }
     }
 
@@ -65,9 +153,17 @@ public class Post implements Comparable<Post> {
      * @param user The user who unliked the post.
      */
     public void unlike(User user){
-        if (likedBy.containsKey(user.getUserID())){
-            likedBy.remove(user.getUserID());
-            likeCount--;
+        if (likedBy.remove(user.getHandle())){
+            FeedDelivery delivery = author.getDelivery();
+            int rank = author.getRankedPosts().indexOf(this);
+            if (delivery != null){
+                delivery.beforeLikeChange(this);
+            }
+            setLikeCount(getLikeCount() - 1);
+            author.getRankedPosts().reposition(rank);
+            if (delivery != null){
+                delivery.afterLikeChange(this);
+            }
         }
     }
 
@@ -77,7 +173,7 @@ public class Post implements Comparable<Post> {
      * @return True if the user has liked the post, false otherwise.
      */
     public boolean isLikedBy(User user){
-        return likedBy.containsKey(user.getUserID());
+        return likedBy.contains(user.getHandle());
     }
 
     /***
@@ -85,9 +181,7 @@ public class Post implements Comparable<Post> {
      * @param user The user who has seen the post.
      */
     public void markSeen(User user){
-        if (!seenBy.containsKey(user.getUserID())){
-            seenBy.put(user.getUserID(), user);
-        }
+        seenBy.add(user.getHandle());
     }
 
     /***
@@ -96,7 +190,7 @@ public class Post implements Comparable<Post> {
      * @return True if the user has seen the post, false otherwise.
      */
     public boolean isSeenBy(User user){
-        return seenBy.containsKey(user.getUserID());
+        return seenBy.contains(user.getHandle());
     }
 
     /***
@@ -108,9 +202,21 @@ public class Post implements Comparable<Post> {
      */
     @Override
     public int compareTo(Post other){
-        if (this.likeCount == other.likeCount){
-            return this.postID.compareTo(other.postID); // compares lexicographically when the like counts are equal
+        return compareTo(other.getLikeCount(), other.postID);
+    }
+
+    /***
+     * Compares this post to the ordering key of a post, e.g. the key a post had before its likes changed.
+     * @param otherLikes The like count of the key.
+     * @param otherPostID The post ID of the key.
+     * @return A negative integer, zero, or a positive integer as this post is less than, equal to, or greater than
+     * the key.
+     */
+    public int compareTo(int otherLikes, String otherPostID){
+        int likes = this.getLikeCount();
+        if (likes == otherLikes){
+            return this.postID.compareTo(otherPostID); // compares lexicographically when the like counts are equal
         }
-        return Integer.compare(this.likeCount, other.likeCount);
+        return Integer.compare(likes, otherLikes);
     }
 }
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * Keeps the like counts and contents of posts outside the Java heap, so many more posts fit without growing the heap
+ * the garbage collector has to scan. The rest of a post, i.e. its ID, author and like and view bitmaps, stays on the
+ * heap in its Post object.
+ * The like count and content reference of every post are kept in columns indexed by the post handle, each made
+ * of fixed-size pages of direct memory allocated as handles grow. Contents are appended to an arena of pages, either
+ * direct memory or pages mapped from a scratch file, so the operating system can page them out. Arena pages are only
+ * allocated when contents are added, starting small and doubling up to a maximum size, so a store with few posts
+ * stays small.
+ * A content reference holds the page number in its high 32 bits and the position in the page in its low 32 bits.
+ * Creating posts is synchronized, as posts of different shards may be created at the same time. Reads and like
+ * updates of a post need no lock, as the commands touching a post are ordered by the engine.
+ */
+public class PostStore {
+    private static final int PAGE_BITS = 16; // posts per column page, as a power of two
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_BITS); // enough pages for every int handle
+    private static final int FIRST_ARENA_PAGE_SIZE = 1 << 16; // 64 KiB of contents in the first arena page
+    private static final int ARENA_PAGE_SIZE = 1 << 26; // 64 MiB of contents per arena page at most
+    private static final int MAX_ARENA_PAGES = 1 << 16;
+
+    // column pages, allocated when the first post of a page is added and never replaced
+    private ByteBuffer[] likes = new ByteBuffer[MAX_PAGES]; // int per post
+    private ByteBuffer[] contents = new ByteBuffer[MAX_PAGES]; // long reference and int length per post
+
+    private ByteBuffer[] arena = new ByteBuffer[MAX_ARENA_PAGES]; // content pages, only the last one is appended to
+    private int arenaPages; // number of content pages in use
+    private int nextArenaPageSize = FIRST_ARENA_PAGE_SIZE; // size of the next content page, doubled for each page
+    private FileChannel arenaFile; // null if the contents are kept in direct memory
+    private long arenaFileSize; // bytes of the scratch file mapped so far
+    private long contentBytes; // bytes of all contents appended
+
+    /***
+     * Constructor to keep the contents in direct memory.
+     */
+    public PostStore(){
+        this.arenaFile = null;
+    }
+
+    /***
+     * Constructor to keep the contents in pages mapped from a scratch file. The file is overwritten.
+     * @param fileName The path of the scratch file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public PostStore(String fileName) throws IOException{
+        this.arenaFile = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /***
+     * Adds a post with its like count and content.
+     * @param handle The handle of the post.
+     * @param likeCount The number of likes of the post.
+     * @param content The content of the post.
+     */
+    public synchronized void add(int handle, int likeCount, String content){
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer page = arenaPages > 0 ? arena[arenaPages - 1] : null;
+        if (page == null || page.remaining() < bytes.length){
+            page = newArenaPage(Math.max(nextArenaPageSize, bytes.length));
+            nextArenaPageSize = Math.min(nextArenaPageSize * 2, ARENA_PAGE_SIZE);
+        }
+        long reference = ((long) (arenaPages - 1) << 32) | page.position();
+        page.put(bytes);
+        contentBytes += bytes.length;
+
+        int pageIndex = handle >>> PAGE_BITS;
+        if (likes[pageIndex] == null){
+            likes[pageIndex] = ByteBuffer.allocateDirect(PAGE_SIZE * 4);
+            contents[pageIndex] = ByteBuffer.allocateDirect(PAGE_SIZE * 12);
+        }
+        int slot = handle & (PAGE_SIZE - 1);
+        likes[pageIndex].putInt(slot * 4, likeCount);
+        contents[pageIndex].putLong(slot * 12, reference);
+        contents[pageIndex].putInt(slot * 12 + 8, bytes.length);
+    }
+
+    /***
+     * Starts a new content page in direct memory or in the scratch file.
+     * @param size The size of the page in bytes.
+     * @return The new page.
+     */
+    private ByteBuffer newArenaPage(int size){
+        if (arenaPages == MAX_ARENA_PAGES){
+            throw new IllegalStateException("Post content arena is full");
+        }
+        ByteBuffer page;
+        if (arenaFile == null){
+            page = ByteBuffer.allocateDirect(size);
+        } else {
+            try {
+                page = arenaFile.map(FileChannel.MapMode.READ_WRITE, arenaFileSize, size);
+            } catch (IOException e){
+                throw new IllegalStateException("Could not map the post content arena", e);
+            }
+            arenaFileSize += size;
+        }
+        arena[arenaPages++] = page;
+        return page;
+    }
+
+    /***
+     * Gets the like count of a post.
+     * @param handle The handle of the post.
+     * @return The number of likes.
+     */
+    public int getLikeCount(int handle){
+        return likes[handle >>> PAGE_BITS].getInt((handle & (PAGE_SIZE - 1)) * 4);
+    }
+
+    /***
+     * Sets the like count of a post.
+     * @param handle The handle of the post.
+     * @param likeCount The new number of likes.
+     */
+    public void setLikeCount(int handle, int likeCount){
+        likes[handle >>> PAGE_BITS].putInt((handle & (PAGE_SIZE - 1)) * 4, likeCount);
+    }
+
+    /***
+     * Gets the content of a post, decoded from the arena.
+     * @param handle The handle of the post.
+     * @return The content of the post.
+     */
+    public String getContent(int handle){
+        ByteBuffer column = contents[handle >>> PAGE_BITS];
+        int slot = handle & (PAGE_SIZE - 1);
+        long reference = column.getLong(slot * 12);
+        byte[] bytes = new byte[column.getInt(slot * 12 + 8)];
+        arena[(int) (reference >>> 32)].get((int) reference, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /***
+     * Gets the number of content bytes in the arena.
+     * @return The total length of all contents in bytes.
+     */
+    public long getContentBytes(){
+        return contentBytes;
+    }
+
+    /***
+     * Closes the scratch file, if any. The store must not be used afterwards.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close() throws IOException{
+        if (arenaFile != null){
+            arenaFile.close();
+        }
+    }
+}
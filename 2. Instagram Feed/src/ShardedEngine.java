@@ -0,0 +1,378 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * Executes commands on several worker threads, each owning the users of one shard and the posts of those users.
+ * A user belongs to the shard given by its handle modulo the shard count. Every command is routed to the queues of all
+ * shards whose state it reads or writes. A command of one shard runs on its worker right away, while a command of
+ * several shards runs once all their workers have reached it, on the last one to arrive, and the others wait for it.
+ * Since every queue keeps the input order, each piece of state sees the commands in the same order as in the
+ * single-threaded run. The output of each command is collected separately and written to the log in input order.
+ * The dispatching thread decides the shards of a command from its own record of created users, post authors and
+ * follows, so it never reads the state the workers are changing.
+ * If metrics are kept, each worker times the commands it executes and the dispatching thread records them when their
+ * output is logged, so the latencies are execution times without the waiting for other shards.
+ */
+public class ShardedEngine {
+    private static final int WINDOW = 4096; // commands dispatched ahead of the log at most, a power of two
+    private static final Task STOP = new Task(); // handed to the workers to stop them
+
+    private Platform platform;
+    private LogSink log;
+    private Metrics metrics; // null if no metrics are kept
+    private int shardCount;
+    private long allShards; // mask with a bit for every shard
+    private MySpscRing<Task>[] queues; // commands routed to each shard in input order
+    private Thread[] workers;
+    private Task[] window; // tasks of the dispatched commands indexed by sequence number modulo WINDOW
+    private long nextSequence; // sequence number of the next command to be dispatched
+    private long nextToLog; // sequence number of the oldest command whose output is not written yet
+    private volatile Throwable failure; // the first error of a worker, reported to the dispatching thread
+
+    // the dispatching thread's own record of the state needed to route commands
+    private MyBitmap createdUsers; // handles of the users that exist
+    private int[] postAuthors; // handle + 1 of the author of each post, 0 if the post does not exist
+    private FollowGraph follows; // whom each user follows
+    private long[] followedShards; // shards of the users each user follows, indexed by handle
+
+    /***
+     * A command in flight together with its output.
+     */
+    private static class Task {
+        Command command = new Command();
+        LogBuffer output = new LogBuffer();
+        long sequence;
+        int parties; // number of shards the command is routed to
+        long nanos; // time the command took to execute
+        AtomicInteger arrivals = new AtomicInteger(); // number of workers that have reached the command
+        volatile long doneSequence = -1; // sequence number of the last command of this task that was executed
+    }
+
+    /***
+     * Constructor to start the workers.
+     * The platform may already hold users and posts, e.g. restored from a snapshot, so the routing record starts
+     * from them. Its dictionaries must not be changed by another thread meanwhile.
+     * @param platform The platform keeping all users and posts.
+     * @param shardCount The number of shards and worker threads, between 1 and 64.
+     * @param log LogSink to write output messages to, in input order.
+     * @param metrics The metrics the executed commands are recorded in, or null to keep none.
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedEngine(Platform platform, int shardCount, LogSink log, Metrics metrics){
+        if (shardCount < 1 || shardCount > 64){
+            throw new IllegalArgumentException("Shard count must be between 1 and 64: " + shardCount);
+        }
+        this.platform = platform;
+        this.log = log;
+        this.metrics = metrics;
+        this.shardCount = shardCount;
+        this.allShards = shardCount == 64 ? -1L : (1L << shardCount) - 1;
+        this.window = new Task[WINDOW];
+        for (int i = 0; i < WINDOW; i++){
+            window[i] = new Task();
+        }
+        this.createdUsers = new MyBitmap();
+        this.postAuthors = new int[16];
+        this.follows = new FollowGraph(platform, 16);
+        this.followedShards = new long[16];
+        for (int handle = 0; handle < platform.getUserIds().size(); handle++){
+            User user = platform.getUser(handle);
+            if (user != null){
+                createdUsers.add(handle);
+                growUsers(handle);
+                int[] following = user.getFollowingHandles();
+                for (int i = 0; i < user.getFollowingCount(); i++){
+                    follows.add(handle, following[i]);
+                    followedShards[handle] |= shardOf(following[i]);
+                }
+                int author = handle + 1;
+                user.forEachPost(post -> {
+                    growPosts(post.getHandle());
+                    postAuthors[post.getHandle()] = author;
+                });
+            }
+        }
+        this.queues = (MySpscRing<Task>[]) new MySpscRing<?>[shardCount];
+        this.workers = new Thread[shardCount];
+        for (int shard = 0; shard < shardCount; shard++){
+            MySpscRing<Task> queue = new MySpscRing<>(WINDOW); // never full, as at most WINDOW tasks are in flight
+            queues[shard] = queue;
+            workers[shard] = new Thread(() -> work(queue), "shard-" + shard);
+            workers[shard].setDaemon(true);
+            workers[shard].start();
+        }
+    }
+
+    /***
+     * Executes the commands routed to one shard until the stop marker arrives. Runs on a worker thread.
+     * @param queue The queue of the shard.
+     */
+    private void work(MySpscRing<Task> queue){
+        while (true){
+            Task task = queue.take();
+            if (task == STOP){
+                return;
+            }
+            // read before arriving, the task may be done and reused as soon as the last worker arrives
+            long sequence = task.sequence;
+            int parties = task.parties;
+            if (parties == 1 || task.arrivals.incrementAndGet() == parties){
+                try {
+                    long start = metrics != null ? System.nanoTime() : 0;
+                    Main.execute(platform, task.command, task.output);
+                    if (metrics != null){
+                        task.nanos = System.nanoTime() - start;
+                    }
+                } catch (Throwable e){
+                    if (failure == null){
+                        failure = e;
+                    }
+                }
+                task.doneSequence = sequence;
+            } else {
+                int idle = 0;
+                while (task.doneSequence < sequence){
+                    idle = backOff(idle);
+                }
+            }
+        }
+    }
+
+    /***
+     * Routes a command to the workers of its shards.
+     * @param command The command to be executed, may be reused by the caller once this returns.
+     * @throws IOException If writing the log or executing an earlier command failed.
+     */
+    public void submit(Command command) throws IOException{
+        while (nextToLog < nextSequence && isDone(window[(int) nextToLog & (WINDOW - 1)])){
+            logOldest(); // write whatever is finished, so the log keeps up with the workers
+        }
+        if (nextSequence - nextToLog == WINDOW){
+            logOldest();
+        }
+        long shards = route(command);
+        Task task = window[(int) nextSequence & (WINDOW - 1)];
+        task.command.copyFrom(command);
+        task.output.clear();
+        task.sequence = nextSequence++;
+        task.parties = Long.bitCount(shards);
+        task.arrivals.set(0);
+        for (long rest = shards; rest != 0; rest &= rest - 1){
+            queues[Long.numberOfTrailingZeros(rest)].put(task);
+        }
+    }
+
+    /***
+     * Finds the shards whose state a command reads or writes and updates the record of the dispatching thread.
+     * Growing the user or post array of the platform needs all workers to be idle, so it is done here after waiting.
+     * @param command The command to be routed.
+     * @return The mask of the shards of the command.
+     * @throws IOException If writing the log or executing an earlier command failed.
+     */
+    private long route(Command command) throws IOException{
+        int user = command.userHandle;
+        int target = command.targetHandle;
+        switch (command.type){
+            case Command.CREATE_USER:
+                if (createdUsers.add(user) && !platform.hasRoomForUser(user)){
+                    logAll();
+                    platform.makeRoomForUser(user);
+                }
+                return shardOf(user);
+            case Command.FOLLOW_USER:
+                if (user < 0 || target < 0){
+                    return 1L; // an unknown ID was never created, so the command fails whatever the state is
+                }
+                growUsers(user);
+                // the follow succeeds in the same cases as on the worker, as the record sees the same commands
+                if (user != target && createdUsers.contains(user) && createdUsers.contains(target)
+                        && follows.add(user, target)){
+                    followedShards[user] |= shardOf(target);
+                }
+                return shardOf(user) | shardOf(target);
+            case Command.UNFOLLOW_USER:
+                if (user < 0 || target < 0){
+                    return 1L;
+                }
+                growUsers(user);
+                if (follows.remove(user, target)){
+                    updateFollowedShards(user);
+                }
+                return shardOf(user) | shardOf(target);
+            case Command.SEE_ALL_POSTS_FROM_USER:
+                return user < 0 || target < 0 ? 1L : shardOf(user) | shardOf(target);
+            case Command.CREATE_POST:
+                if (user < 0){
+                    return 1L;
+                }
+                growPosts(target);
+                if (postAuthors[target] != 0){
+                    return shardOf(user) | shardOf(postAuthors[target] - 1); // the existing post is read
+                }
+                if (createdUsers.contains(user)){
+                    postAuthors[target] = user + 1;
+                    if (!platform.hasRoomForPost(target)){
+                        logAll();
+                        platform.makeRoomForPost(target);
+                    }
+                }
+                return shardOf(user);
+            case Command.SEE_POST:
+            case Command.TOGGLE_LIKE:
+                if (user < 0 || target < 0){
+                    return 1L;
+                }
+                growPosts(target);
+                if (postAuthors[target] == 0){
+                    return allShards; // a later command may create the post, so nothing may run alongside
+                }
+                return shardOf(user) | shardOf(postAuthors[target] - 1);
+            case Command.GENERATE_FEED:
+            case Command.SCROLL_THROUGH_FEED:
+                if (user < 0){
+                    return 1L;
+                }
+                growUsers(user);
+                return shardOf(user) | followedShards[user];
+            case Command.SORT_POSTS:
+                return user < 0 ? 1L : shardOf(user);
+            default:
+                return 1L; // unknown commands print in input order on the first shard
+        }
+    }
+
+    /***
+     * Gets the mask of the shard owning a user.
+     * @param handle The handle of the user.
+     * @return The mask with the bit of the user's shard.
+     */
+    private long shardOf(int handle){
+        return 1L << (handle % shardCount);
+    }
+
+    /***
+     * Recomputes the shards a user follows from the record of its follows, so a feed of the user waits only for the
+     * shards of the users it still follows.
+     * @param handle The handle of the user.
+     */
+    private void updateFollowedShards(int handle){
+        int[] row = follows.getRow(handle);
+        long shards = 0;
+        for (int i = 0, degree = follows.degree(handle); i < degree; i++){
+            shards |= shardOf(row[i]);
+        }
+        followedShards[handle] = shards;
+    }
+
+    /***
+     * Grows the follow record and the followed shards array so the given user handle fits.
+     * @param handle The handle of the user.
+     */
+    private void growUsers(int handle){
+        follows.makeRoomForUser(handle);
+        if (handle >= followedShards.length){
+            long[] newShards = new long[Math.max(followedShards.length * 2, handle + 1)];
+            System.arraycopy(followedShards, 0, newShards, 0, followedShards.length);
+            followedShards = newShards;
+        }
+    }
+
+    /***
+     * Grows the post authors array so the given post handle fits.
+     * @param handle The handle of the post.
+     */
+    private void growPosts(int handle){
+        if (handle >= postAuthors.length){
+            int[] newAuthors = new int[Math.max(postAuthors.length * 2, handle + 1)];
+            System.arraycopy(postAuthors, 0, newAuthors, 0, postAuthors.length);
+            postAuthors = newAuthors;
+        }
+    }
+
+    /***
+     * Checks whether the command of a task has been executed.
+     * @param task The task to be checked.
+     * @return True if the command is executed, false otherwise.
+     */
+    private static boolean isDone(Task task){
+        return task.doneSequence == task.sequence;
+    }
+
+    /***
+     * Waits for the oldest command in flight and writes its output to the log.
+     * @throws IOException If writing the log or executing a command failed.
+     */
+    private void logOldest() throws IOException{
+        Task task = window[(int) nextToLog & (WINDOW - 1)];
+        int idle = 0;
+        while (!isDone(task)){
+            idle = backOff(idle);
+        }
+        Throwable e = failure;
+        if (e != null){
+            if (e instanceof IOException){
+                throw (IOException) e;
+            } else if (e instanceof RuntimeException){
+                throw (RuntimeException) e;
+            }
+            throw new IOException("Executing a command failed", e);
+        }
+        if (metrics != null){
+            metrics.record(task.command.getType(), task.nanos, task.output);
+        }
+        task.output.writeTo(log);
+        nextToLog++;
+    }
+
+    /***
+     * Waits for all commands submitted so far, so the platform can be read on this thread, e.g. for a checkpoint.
+     * @throws IOException If writing the log or executing a command failed.
+     */
+    public void drain() throws IOException{
+        logAll();
+    }
+
+    /***
+     * Waits for all commands in flight and writes their output to the log, leaving the workers idle.
+     * @throws IOException If writing the log or executing a command failed.
+     */
+    private void logAll() throws IOException{
+        while (nextToLog < nextSequence){
+            logOldest();
+        }
+    }
+
+    /***
+     * Waits a little before checking again, spinning first and parking after a while.
+     * @param idle The number of failed checks so far.
+     * @return The number of failed checks including this one.
+     */
+    private static int backOff(int idle){
+        if (idle < 100){
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+        return idle + 1;
+    }
+
+    /***
+     * Writes the output of all remaining commands and stops the workers.
+     * @throws IOException If writing the log or executing a command failed.
+     */
+    public void close() throws IOException{
+        logAll();
+        for (MySpscRing<Task> queue : queues){
+            queue.put(STOP);
+        }
+        try {
+            for (Thread worker : workers){
+                worker.join();
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while stopping the workers", e);
+        }
+    }
+}
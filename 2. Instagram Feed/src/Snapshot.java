@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * Writes the whole state of a platform to a binary file and restores it, so a run can continue from a snapshot
+ * instead of replaying every command before it.
+ * The file holds the number of input commands the state covers, the user and post ID dictionaries in handle order, then
+ * every user with its seen posts and its posts in descending order of likes, each post with its content and the bitmaps
+ * of its likes and views, and finally the follows. Bitmaps are copied chunk by chunk, and the file is read through a
+ * memory mapping, so restoring is mostly bulk copying. Posts come in ranking order, so they are appended to the
+ * rankings of their authors without shifting.
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x49475332; // "IGS2"
+    private static final int BUFFER_SIZE = 1 << 20; // 1 MiB
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+
+    /***
+     * Constructor to create the snapshot file for writing.
+     * @param fileName The path of the snapshot file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Snapshot(String fileName) throws IOException{
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /***
+     * Writes the state of a platform to a snapshot file.
+     * @param platform The platform to be written.
+     * @param fileName The path of the snapshot file.
+     * @param sequence The number of input commands applied to the platform.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void write(Platform platform, String fileName, long sequence) throws IOException{
+        Snapshot snapshot = new Snapshot(fileName);
+        try {
+            snapshot.ensure(12);
+            snapshot.buffer.putInt(MAGIC).putLong(sequence);
+            snapshot.writePlatform(platform);
+            snapshot.flush();
+            snapshot.channel.force(true); // a checkpoint may drop the write-ahead log once the snapshot is written
+        } finally {
+            snapshot.channel.close();
+        }
+    }
+
+    /***
+     * Writes the dictionaries, users, posts and follows of a platform.
+     * @param platform The platform to be written.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writePlatform(Platform platform) throws IOException{
+        IdDictionary userIds = platform.getUserIds();
+        IdDictionary postIds = platform.getPostIds();
+        writeDictionary(userIds);
+        writeDictionary(postIds);
+
+        int userCount = 0;
+        for (int handle = 0; handle < userIds.size(); handle++){
+            if (platform.getUser(handle) != null){
+                userCount++;
+            }
+        }
+        ensure(4);
+        buffer.putInt(userCount);
+        for (int handle = 0; handle < userIds.size(); handle++){
+            User user = platform.getUser(handle);
+            if (user == null){
+                continue;
+            }
+            MySortedList<Post> rankedPosts = user.getRankedPosts();
+            ensure(8);
+            buffer.putInt(handle);
+            buffer.putInt(rankedPosts.size());
+            writeBitmap(user.getSeenPosts());
+            for (int i = 0; i < rankedPosts.size(); i++){
+                Post post = rankedPosts.get(i);
+                byte[] content = post.getContent().getBytes(StandardCharsets.UTF_8);
+                ensure(8 + content.length);
+                buffer.putInt(post.getHandle());
+                buffer.putInt(content.length);
+                buffer.put(content);
+                writeBitmap(post.getLikedBy());
+                writeBitmap(post.getSeenBy());
+            }
+        }
+
+        for (int handle = 0; handle < userIds.size(); handle++){
+            User user = platform.getUser(handle);
+            if (user == null){
+                continue;
+            }
+            int followingCount = user.getFollowingCount();
+            int[] following = user.getFollowingHandles();
+            ensure(8);
+            buffer.putInt(handle);
+            buffer.putInt(followingCount);
+            for (int i = 0; i < followingCount; i++){
+                ensure(4);
+                buffer.putInt(following[i]);
+            }
+        }
+    }
+
+    /***
+     * Writes the IDs of a dictionary in handle order. The dictionary is locked meanwhile, as the parser thread of a
+     * pipeline may be interning IDs ahead of the commands written.
+     * @param dictionary The dictionary to be written.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeDictionary(IdDictionary dictionary) throws IOException{
+        synchronized (dictionary){
+            int count = dictionary.size();
+            ensure(4);
+            buffer.putInt(count);
+            for (int handle = 0; handle < count; handle++){
+                byte[] key = dictionary.getBytes(handle);
+                ensure(4 + key.length);
+                buffer.putInt(key.length);
+                buffer.put(key);
+            }
+        }
+    }
+
+    /***
+     * Writes a bitmap.
+     * @param bitmap The bitmap to be written.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeBitmap(MyBitmap bitmap) throws IOException{
+        ensure(bitmap.serializedSize());
+        bitmap.writeTo(buffer);
+    }
+
+    /***
+     * Makes room for the given number of bytes in the buffer, writing it to the file or growing it if needed.
+     * @param bytes The number of bytes to be put.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void ensure(int bytes) throws IOException{
+        if (buffer.remaining() < bytes){
+            flush();
+            if (buffer.capacity() < bytes){
+                buffer = ByteBuffer.allocateDirect(bytes);
+            }
+        }
+    }
+
+    /***
+     * Writes the buffered bytes to the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void flush() throws IOException{
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /***
+     * Restores a platform from a snapshot file.
+     * @param fileName The path of the snapshot file.
+     * @return The restored platform.
+     * @throws IOException If an I/O error occurs or the file is not a snapshot.
+     */
+    public static Platform read(String fileName) throws IOException{
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)){
+            if (channel.size() > Integer.MAX_VALUE){
+                throw new IOException("Snapshot is too large to map: " + fileName);
+            }
+            MappedByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (input.remaining() < 12 || input.getInt() != MAGIC){
+                throw new IOException("Not a snapshot file: " + fileName);
+            }
+            input.getLong(); // the sequence number is read by readSequence
+            int userIdCount = input.getInt(input.position());
+            Platform platform = new Platform(Math.max(userIdCount, 10));
+            readDictionary(input, platform.getUserIds());
+            readDictionary(input, platform.getPostIds());
+
+            int userCount = input.getInt();
+            for (int i = 0; i < userCount; i++){
+                int handle = input.getInt();
+                int postCount = input.getInt();
+                User user = new User(handle, platform.getUserID(handle));
+                user.setSeenPosts(MyBitmap.readFrom(input));
+                for (int j = 0; j < postCount; j++){
+                    int postHandle = input.getInt();
+                    byte[] content = new byte[input.getInt()];
+                    input.get(content);
+                    MyBitmap likedBy = MyBitmap.readFrom(input);
+                    MyBitmap seenBy = MyBitmap.readFrom(input);
+                    Post post = new Post(postHandle, platform.getPostID(postHandle),
+                            new String(content, StandardCharsets.UTF_8), user, likedBy, seenBy);
+                    user.addPost(post);
+                    platform.addPost(post);
+                }
+                platform.addUser(user);
+            }
+
+            for (int i = 0; i < userCount; i++){
+                User user = platform.getUser(input.getInt());
+                int followCount = input.getInt();
+                for (int j = 0; j < followCount; j++){
+                    user.follow(platform.getUser(input.getInt()));
+                }
+            }
+            return platform;
+        } catch (RuntimeException e){
+            throw new IOException("Corrupt snapshot file: " + fileName, e);
+        }
+    }
+
+    /***
+     * Reads the number of input commands the state in a snapshot file covers.
+     * @param fileName The path of the snapshot file.
+     * @return The number of input commands applied to the platform when the snapshot was written.
+     * @throws IOException If an I/O error occurs or the file is not a snapshot.
+     */
+    public static long readSequence(String fileName) throws IOException{
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(12);
+            while (header.hasRemaining() && channel.read(header) >= 0){
+                // read the whole header
+            }
+            header.flip();
+            if (header.remaining() < 12 || header.getInt() != MAGIC){
+                throw new IOException("Not a snapshot file: " + fileName);
+            }
+            return header.getLong();
+        }
+    }
+
+    /***
+     * Reads IDs in handle order into an empty dictionary, so every ID gets back its handle.
+     * @param input The buffer positioned at the start of the dictionary.
+     * @param dictionary The empty dictionary to be filled.
+     */
+    private static void readDictionary(ByteBuffer input, IdDictionary dictionary){
+        int count = input.getInt();
+        for (int handle = 0; handle < count; handle++){
+            int length = input.getInt();
+            dictionary.intern(input, input.position(), length);
+            input.position(input.position() + length);
+        }
+    }
+}
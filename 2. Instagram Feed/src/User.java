@@ -1,25 +1,36 @@
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
 /***
  * Represents a user in Instagram.
  * Each user has an ID, followers, followings, posts and a history of seen posts.
  */
 public class User {
     private String userID;
-    private MyHashMap<String, User> followers;
-    private MyHashMap<String, User> following;
-    private MyHashMap<String, Post> posts;
-    private MyHashMap<String, Post> seenPosts; // hashmap for keeping track of posts user saw
+    private int handle; // dense integer handle of the user ID, used as the key of the user in all maps
+    private FollowGraph following; // whom each user follows, shared by all users of the platform
+    private FollowGraph followers; // who follows each user, shared by all users of the platform
+    private MyBitmap postHandles; // handles of the posts made by the user, the posts themselves are ranked below
+    private MyBitmap seenPosts; // bitmap of the handles of posts user saw
+    private MySortedList<Post> rankedPosts; // posts of the user in descending order of likes
+    private FeedDelivery delivery; // null if all feeds are merged when they are read
+    private MySortedList<Post> inbox; // unseen posts pushed by followed authors in descending order of likes
+    private boolean pushing; // whether the posts of the user are pushed to the inboxes of its followers
+    private FeedMerger feedMerger; // merge kept between feed reads, null if the next read starts a new one
 
     /***
      * Constructor to initialize a user with given ID.
-     * Initializes empty maps for followers, followings, posts and seen posts
+     * Initializes empty bitmaps for posts and seen posts, and an empty post ranking.
+     * The user has no follows until it is added to a platform, which gives it the follow graphs.
+     * @param handle The dense integer handle of the user ID
      * @param userID The unique ID of the user
      */
-    public User(String userID){
+    public User(int handle, String userID){
         this.userID = userID;
-        this.followers = new MyHashMap<>(10);
-        this.following = new MyHashMap<>(10);
-        this.posts = new MyHashMap<>(10);
-        this.seenPosts = new MyHashMap<>(10);
+        this.handle = handle;
+        this.postHandles = new MyBitmap();
+        this.seenPosts = new MyBitmap();
+        this.rankedPosts = new MySortedList<>(10);
     }
 
     /***
@@ -27,9 +38,14 @@ public class User {
      * @param user The user to follow
      */
     public void follow(User user){
-        if (!following.containsKey(user.getUserID())){
-            following.put(user.getUserID(), user);
-            user.addFollower(this); // when current user follows someone, he/she becomes a follower of the other user
+        if (following.add(handle, user.getHandle())){
+            followers.add(user.getHandle(), handle); // the current user becomes a follower of the other user
+            if (delivery != null){
+                delivery.followed(this, user); // may reset the feed if the other user stops pushing
+            }
+            if (feedMerger != null){
+                feedMerger.followed(user);
+            }
         }
     }
 
@@ -38,70 +54,106 @@ public class User {
      * @param user The user to unfollow
      */
     public void unfollow(User user){
-        if (following.containsKey(user.getUserID())){
-            following.remove(user.getUserID());
-            user.removeFollower(this);
+        if (following.remove(handle, user.getHandle())){
+            followers.remove(user.getHandle(), handle);
+            if (delivery != null){
+                delivery.unfollowed(this, user);
+            }
+            if (feedMerger != null){
+                feedMerger.unfollowed(user);
+            }
         }
     }
 
     /***
-     * Adds a follower to the current user
-     * @param user The user who started following this user
+     * Creates a new post for the user.
+     * The same post instance is kept by the user and by the platform, so there is a single copy of every post.
+     * @param handle The dense integer handle of the post ID.
+     * @param postID The unique ID of the post.
+     * @param content The content of the post.
+     * @return The created post, or null if the user already has a post with that ID.
      */
-    private void addFollower(User user) {
-        if (!followers.containsKey(user.getUserID())){
-            followers.put(user.getUserID(), user);
+    public Post createPost(int handle, String postID, String content){
+        if (postHandles.contains(handle)){
+            return null;
         }
+        Post post = new Post(handle, postID, content, this);
+        addPost(post);
+        return post;
     }
 
     /***
-     * Removes a follower from the current user
-     * @param user The user who stopped following this user
+     * Adds a post made by the user, e.g. one restored from a snapshot, to the user's posts.
+     * Adding posts in descending order of likes keeps each insertion at the end of the ranking.
+     * @param post The post to be added.
      */
-    private void removeFollower(User user){
-        if (following.containsKey(user.getUserID())){
-            followers.remove(user.getUserID());
+    public void addPost(Post post){
+        postHandles.add(post.getHandle());
+        rankedPosts.add(post);
+        if (delivery != null){
+            delivery.postCreated(post);
         }
     }
 
     /***
-     * Creates a new post for the user.
-     * @param postID The unique ID of the post.
-     * @param content The content of the post.
+     * Gets the posts made by the user in descending order of likes.
+     * If the like counts are equal, posts are ordered lexicographically by post ID as in Post.compareTo.
+     * @return The like-ordered list of the user's posts.
+     */
+    public MySortedList<Post> getRankedPosts() {
+        return rankedPosts;
+    }
+
+    /***
+     * Performs an action for every post made by the user, in descending order of likes.
+     * @param action The action to be performed, which must not change the likes of the user's posts.
      */
-    public void createPost(String postID, String content){
-        if (!posts.containsKey(postID)){
-            Post newPost = new Post(postID, content, this);
-            posts.put(postID, newPost);
+    public void forEachPost(Consumer<Post> action){
+        for (int i = 0; i < rankedPosts.size(); i++){
+            action.accept(rankedPosts.get(i));
         }
     }
 
     /***
-     * Gets all posts made by the user
-     * @return A map containing all posts made by the user.
+     * Gets the feed of the user containing unseen posts from users they follow.
+     * The like-ordered post lists of the followed users, or the inbox and the lists of the followed users who do not
+     * push their posts, are merged lazily, so the merge stops after num posts. The merge is kept as the feed index of
+     * the user and only read here, so the next feed read resumes it instead of merging every followed list again.
+     * @param num The maximum number of posts in the feed.
+     * @return A list of at most num posts in descending order of likes.
      */
-    public MyHashMap<String, Post> getPosts() {
-        return posts;
+    public ArrayList<Post> getFeed(int num) {
+        return resumeFeed().peek(num);
     }
 
     /***
-     * Generates a feed for the user containing posts from users they follow.
-     * Only posts that haven't been seen by the user are included in user's feed.
-     * @param allPosts A map of all posts in the platform.
-     * @return A priority queue containing the posts in the user's feed.
+     * Gets the feed of the user for a scroll, consuming the posts from the kept merge.
+     * Every post of a scroll is seen, so the next read continues where the scroll stopped and only the followed lists
+     * that changed meanwhile are merged again. The caller must mark all returned posts as seen.
+     * @param num The maximum number of posts in the feed.
+     * @return A list of at most num posts in descending order of likes, the same as getFeed.
      */
-    public MyPriorityQueue<Post> getFeed(MyHashMap<String, Post> allPosts) {
-        MyPriorityQueue<Post> userFeed = new MyPriorityQueue<>(10);
-        for (User followedUser : following.values()){
-            for (Post post : followedUser.getPosts().values()) {
-                post = allPosts.get(post.getPostID()); // in the case of posts with same IDs refer to different post instances,
-                                                       // make the post instance the same with the post in global posts hashmap
-                if (!seenPosts.containsKey(post.getPostID())){
-                    userFeed.add(post);
-                }
-            }
+    public ArrayList<Post> scrollFeed(int num) {
+        FeedMerger merger = resumeFeed();
+        ArrayList<Post> feed = new ArrayList<>();
+        Post post;
+        while (feed.size() < num && (post = merger.next()) != null){
+            feed.add(post);
+        }
+        return feed;
+    }
+
+    /***
+     * Gets the merge kept between feed reads, starting a new one if there is none.
+     * @return The merge, ready to be read.
+     */
+    private FeedMerger resumeFeed(){
+        if (feedMerger == null){
+            feedMerger = new FeedMerger(this);
+        } else {
+            feedMerger.resume();
         }
-        return userFeed;
+        return feedMerger;
     }
 
     /***
@@ -113,11 +165,138 @@ public class User {
     }
 
     /***
-     * Gets the map of users that the current user is following.
-     * @return A map containing all users that the current user is following.
+     * Gets the handle of the user ID.
+     * @return The dense integer handle of the user ID.
+     */
+    public int getHandle() {
+        return handle;
+    }
+
+    /***
+     * Sets the follow graphs of the platform the user is added to.
+     * @param following The graph of whom each user follows.
+     * @param followers The graph of who follows each user.
+     */
+    public void setFollowGraphs(FollowGraph following, FollowGraph followers){
+        this.following = following;
+        this.followers = followers;
+    }
+
+    /***
+     * Checks whether the current user follows another user.
+     * @param user The other user.
+     * @return True if the current user follows the other user, false otherwise.
+     */
+    public boolean isFollowing(User user){
+        return following.contains(handle, user.getHandle());
+    }
+
+    /***
+     * Gets the number of users that the current user is following.
+     * @return The following count.
+     */
+    public int getFollowingCount(){
+        return following.degree(handle);
+    }
+
+    /***
+     * Gets the number of users following the current user.
+     * @return The follower count.
+     */
+    public int getFollowerCount(){
+        return followers.degree(handle);
+    }
+
+    /***
+     * Gets the handles of the users that the current user is following.
+     * @return The handles in ascending order, of which the first getFollowingCount() are valid until the next follow
+     * or unfollow of the user.
+     */
+    public int[] getFollowingHandles(){
+        return following.getRow(handle);
+    }
+
+    /***
+     * Performs an action for every user that the current user is following, in ascending order of handles.
+     * @param action The action to be performed, which must not make the current user follow or unfollow anyone.
+     */
+    public void forEachFollowing(Consumer<User> action){
+        following.forEach(handle, action);
+    }
+
+    /***
+     * Performs an action for every user following the current user, in ascending order of handles.
+     * @param action The action to be performed, which must not make anyone follow or unfollow the current user.
+     */
+    public void forEachFollower(Consumer<User> action){
+        followers.forEach(handle, action);
+    }
+
+    /***
+     * Sets up the user for hybrid feed delivery with an empty inbox.
+     * @param delivery The delivery the user takes part in.
+     * @param pushing Whether the posts of the user are pushed to the inboxes of its followers.
+     */
+    public void setDelivery(FeedDelivery delivery, boolean pushing){
+        this.delivery = delivery;
+        this.pushing = pushing;
+        this.inbox = new MySortedList<>(10);
+        this.feedMerger = null; // the merged lists are different with an inbox
+    }
+
+    /***
+     * Gets the delivery the user takes part in.
+     * @return The feed delivery, or null if all feeds are merged when they are read.
+     */
+    public FeedDelivery getDelivery(){
+        return delivery;
+    }
+
+    /***
+     * Gets the inbox of the user.
+     * @return The like-ordered unseen posts pushed by followed authors, or null if there is no delivery.
+     */
+    public MySortedList<Post> getInbox(){
+        return inbox;
+    }
+
+    /***
+     * Checks whether the posts of the user are pushed to the inboxes of its followers.
+     * @return True if the user pushes its posts, false otherwise.
+     */
+    public boolean isPushing(){
+        return pushing;
+    }
+
+    /***
+     * Stops pushing the posts of the user, their followers merge them when reading feeds from now on.
+     */
+    public void stopPushing(){
+        pushing = false;
+    }
+
+    /***
+     * Drops the merge kept between feed reads, e.g. when the set of lists merged for the feed changes.
+     */
+    public void resetFeed(){
+        feedMerger = null;
+    }
+
+    /***
+     * Gets the posts the user has seen.
+     * @return The bitmap of the handles of posts the user saw.
      */
-    public MyHashMap<String, User> getFollowing(){
-        return following;
+    public MyBitmap getSeenPosts(){
+        return seenPosts;
+    }
+
+    /***
+     * Replaces the posts the user has seen, e.g. with a bitmap restored from a snapshot.
+     * The posts are not updated, their views are expected to be restored as well.
+     * @param seenPosts The bitmap of the handles of posts the user saw.
+     */
+    public void setSeenPosts(MyBitmap seenPosts){
+        this.seenPosts = seenPosts;
     }
 
     /***
@@ -125,17 +304,53 @@ public class User {
      * @param post The post to be marked as seen.
      */
     public void addSeen(Post post){
-        if (!seenPosts.containsKey(post.getPostID())){
-            seenPosts.put(post.getPostID(), post);
+        if (seenPosts.add(post.getHandle())){
             post.markSeen(this);
+            if (delivery != null){
+                delivery.seen(this, post);
+            }
         }
     }
 
     /***
-     * Gets all posts that the user has seen.
-     * @return A map containing all seen posts.
+     * Adds all posts of another user to the user's seen posts at once.
+     * The posts not seen yet are found with an AND-NOT of the two bitmaps and merged into the seen posts chunk by
+     * chunk, so only those posts are visited to record the user as a viewer, and seeing an author again costs nothing
+     * per post.
+     * @param author The user whose posts are marked as seen.
      */
-    public MyHashMap<String, Post> getSeenPosts() {
-        return seenPosts;
+    public void addSeenAll(User author){
+        MyBitmap unseen = author.postHandles.andNot(seenPosts);
+        int remaining = seenPosts.addAll(unseen);
+        MySortedList<Post> authorPosts = author.rankedPosts;
+        for (int i = 0; i < authorPosts.size() && remaining > 0; i++){
+            Post post = authorPosts.get(i);
+            if (unseen.contains(post.getHandle())){
+                post.markSeen(this);
+                if (delivery != null){
+                    delivery.seen(this, post);
+                }
+                remaining--;
+            }
+        }
+    }
+
+    /***
+     * Checks if the user has seen the specified post.
+     * @param post The post to check.
+     * @return True if the user has seen the post, false otherwise.
+     */
+    public boolean hasSeen(Post post){
+        return seenPosts.contains(post.getHandle());
+    }
+
+    /***
+     * Checks if the user has seen every post of another user.
+     * The check is an AND-NOT of the two bitmaps, so no post of the other user is visited.
+     * @param author The user whose posts are checked.
+     * @return True if the user has seen all posts of the author, false otherwise.
+     */
+    public boolean hasSeenAllPostsOf(User author){
+        return seenPosts.containsAll(author.postHandles);
     }
 }
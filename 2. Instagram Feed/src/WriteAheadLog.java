@@ -0,0 +1,378 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/***
+ * An append-only log of the mutating commands, written before they are applied, so the state of a run that dies
+ * midway can be rebuilt without replaying the whole input.
+ * Every record holds the sequence number of the command in the input and the raw input line, followed by a CRC32C of
+ * both. Records are collected in a buffer and forced to the disk in groups, so one sync covers many commands.
+ * On startup the valid records are replayed and a torn or corrupt tail is cut off. A run resumed on the same input
+ * skips the commands up to the last recorded one, and its log covers only the commands after them.
+ * Every given number of records the log is checkpointed: the platform is written to a snapshot next to the log,
+ * which records the sequence number of the last applied command, and the log is emptied. Recovery then restores the
+ * checkpoint and replays only the records after it, so neither the log nor the recovery time grows with the run.
+ * The log starts with the path and size of the input it was written for, and it is not replayed on any other input.
+ * A run that finishes empties the log and deletes the checkpoint, so the next run starts from the beginning.
+ */
+public class WriteAheadLog {
+    private static final int BUFFER_SIZE = 1 << 18; // 256 KiB
+    private static final int GROUP_SIZE = 512; // records per sync at most
+    private static final int HEADER_SIZE = 12; // line length and sequence number
+    private static final int TRAILER_SIZE = 4; // checksum
+    private static final int MAGIC = 0x49475731; // "IGW1"
+    private static final int LOG_HEADER_SIZE = 16; // magic, input size and path length, followed by the path
+
+    private FileChannel channel;
+    private ByteBuffer buffer; // records not written to the file yet
+    private int pendingRecords; // records in the buffer
+    private ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private CRC32C checksum = new CRC32C();
+    private int logHeaderSize; // bytes before the first record
+    private Path checkpointPath; // snapshot of the platform covering the commands before the records
+    private long checkpointSequence; // sequence number of the last command covered by the checkpoint, 0 if none
+    private long checkpointInterval; // records between checkpoints
+    private long recordsSinceCheckpoint;
+
+    /***
+     * Constructor to open the log file, creating it if it does not exist. A new or empty log is started for the input.
+     * @param fileName The path of the log file. Its checkpoint is kept in the same path with ".checkpoint" added.
+     * @param inputName The path of the input file whose commands are logged.
+     * @param checkpointInterval The number of records after which the log is checkpointed.
+     * @throws IOException If an I/O error occurs, or the log was written for a different input.
+     */
+    public WriteAheadLog(String fileName, String inputName, long checkpointInterval) throws IOException{
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.checkpointPath = Paths.get(fileName + ".checkpoint");
+        this.checkpointInterval = checkpointInterval;
+        try {
+            openFor(Paths.get(inputName).toAbsolutePath().normalize());
+        } catch (IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /***
+     * Checks that the log was written for an input, or starts the log for it if the log holds nothing yet.
+     * @param input The absolute path of the input file.
+     * @throws IOException If an I/O error occurs, or the log was written for a different input.
+     */
+    private void openFor(Path input) throws IOException{
+        byte[] path = input.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer expected = ByteBuffer.allocate(LOG_HEADER_SIZE + path.length + TRAILER_SIZE);
+        expected.putInt(MAGIC).putLong(Files.size(input)).putInt(path.length).put(path);
+        checksum.reset();
+        checksum.update(expected.array(), 0, expected.position());
+        expected.putInt((int) checksum.getValue());
+        expected.flip();
+        logHeaderSize = expected.remaining();
+
+        ByteBuffer found = readLogHeader();
+        if (found == null){
+            if (channel.size() > 0 && Files.exists(checkpointPath)){
+                throw new IOException("Write-ahead log is corrupt: " + checkpointPath.getFileName() + " has no log");
+            }
+            // an empty log, or one torn while its header was written, which happens before any record
+            channel.truncate(0);
+            channel.write(expected, 0);
+            channel.position(logHeaderSize);
+            channel.force(true);
+        } else if (found.equals(expected)){
+            channel.position(logHeaderSize);
+        } else {
+            throw new IOException("Write-ahead log was written for another input than " + input
+                    + " or the input has changed since");
+        }
+    }
+
+    /***
+     * Reads the header at the start of the log file.
+     * @return The header with its checksum, or null if the file does not start with a whole valid header.
+     * @throws IOException If an I/O error occurs.
+     */
+    private ByteBuffer readLogHeader() throws IOException{
+        long size = channel.size();
+        if (size < LOG_HEADER_SIZE + TRAILER_SIZE){
+            return null;
+        }
+        ByteBuffer start = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        readFully(start, 0);
+        int pathLength = start.getInt(12);
+        if (start.getInt(0) != MAGIC || pathLength < 0 || pathLength > size - LOG_HEADER_SIZE - TRAILER_SIZE){
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE + pathLength + TRAILER_SIZE);
+        readFully(header, 0);
+        checksum.reset();
+        checksum.update(header.array(), 0, LOG_HEADER_SIZE + pathLength);
+        return (int) checksum.getValue() == header.getInt(LOG_HEADER_SIZE + pathLength) ? header : null;
+    }
+
+    /***
+     * Fills a buffer from the log file and flips it.
+     * @param destination The buffer to be filled.
+     * @param offset The position in the file to read from.
+     * @throws IOException If an I/O error occurs or the file ends first.
+     */
+    private void readFully(ByteBuffer destination, long offset) throws IOException{
+        while (destination.hasRemaining()){
+            int count = channel.read(destination, offset);
+            if (count < 0){
+                throw new IOException("Write-ahead log ended unexpectedly");
+            }
+            offset += count;
+        }
+        destination.flip();
+    }
+
+    /***
+     * Restores the platform from the checkpoint of the log, if there is one. Must be called before recover.
+     * @return The platform as of the checkpoint, or null if the log has no checkpoint.
+     * @throws IOException If an I/O error occurs or the checkpoint is corrupt.
+     */
+    public Platform readCheckpoint() throws IOException{
+        if (!Files.exists(checkpointPath)){
+            return null;
+        }
+        checkpointSequence = Snapshot.readSequence(checkpointPath.toString());
+        return Snapshot.read(checkpointPath.toString());
+    }
+
+    /***
+     * Replays the valid records of the log on a platform and cuts off anything after them, so new records are appended
+     * right after the last valid one. Records covered by the checkpoint are skipped, as a run may stop after writing
+     * the checkpoint but before emptying the log. The output of the replayed commands is discarded.
+     * @param platform The platform the commands are applied to, restored from the checkpoint if there is one.
+     * @return The sequence number of the last command applied, or 0 if the log and its checkpoint are empty.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long recover(Platform platform) throws IOException{
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE){
+            throw new IOException("Write-ahead log is too large to map");
+        }
+        MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        records.position(logHeaderSize);
+        long lastSequence = checkpointSequence;
+        int replayStart = logHeaderSize;
+        int validEnd = logHeaderSize;
+        while (records.remaining() >= HEADER_SIZE + TRAILER_SIZE){
+            int start = records.position();
+            int length = records.getInt(start);
+            if (length < 0 || length > records.remaining() - HEADER_SIZE - TRAILER_SIZE){
+                break; // torn record at the end
+            }
+            checksum.reset();
+            ByteBuffer covered = records.duplicate();
+            covered.limit(start + HEADER_SIZE + length);
+            checksum.update(covered);
+            if ((int) checksum.getValue() != records.getInt(start + HEADER_SIZE + length)){
+                break; // corrupt record, nothing after it can be trusted
+            }
+            long sequence = records.getLong(start + 4);
+            if (sequence <= checkpointSequence){
+                replayStart = start + HEADER_SIZE + length + TRAILER_SIZE; // covered by the checkpoint
+            } else {
+                lastSequence = sequence;
+                recordsSinceCheckpoint++;
+            }
+            validEnd = start + HEADER_SIZE + length + TRAILER_SIZE;
+            records.position(validEnd);
+        }
+
+        records.position(replayStart);
+        records.limit(validEnd);
+        CommandReader reader = new CommandReader(new RecordLines(records), platform, false);
+        LogSink discard = new LogSink(){
+            @Override
+            protected void put(int b){
+                // the output of these commands was produced by the run that recorded them
+            }
+        };
+        Command command;
+        while ((command = reader.next()) != null){
+            Main.execute(platform, command, discard);
+        }
+
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        return lastSequence;
+    }
+
+    /***
+     * Appends a command to the log. It is forced to the disk with its group.
+     * @param sequence The sequence number of the command in the input.
+     * @param command The command to be recorded with its raw input line.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void append(long sequence, Command command) throws IOException{
+        int length = command.lineLength;
+        if (buffer.remaining() < HEADER_SIZE + length + TRAILER_SIZE){
+            commit();
+            if (buffer.capacity() < HEADER_SIZE + length + TRAILER_SIZE){
+                buffer = ByteBuffer.allocateDirect(HEADER_SIZE + length + TRAILER_SIZE);
+            }
+        }
+        header.clear();
+        header.putInt(length).putLong(sequence);
+        checksum.reset();
+        checksum.update(header.array(), 0, HEADER_SIZE);
+        checksum.update(command.line, 0, length);
+        buffer.put(header.array(), 0, HEADER_SIZE);
+        buffer.put(command.line, 0, length);
+        buffer.putInt((int) checksum.getValue());
+        recordsSinceCheckpoint++;
+        if (++pendingRecords == GROUP_SIZE){
+            commit();
+        }
+    }
+
+    /***
+     * Checks whether enough records were appended since the last checkpoint to take a new one.
+     * @return True if the log should be checkpointed, false otherwise.
+     */
+    public boolean isCheckpointDue(){
+        return recordsSinceCheckpoint >= checkpointInterval;
+    }
+
+    /***
+     * Writes the buffered records to the file and forces them to the disk.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void commit() throws IOException{
+        if (pendingRecords == 0){
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+        channel.force(false);
+        pendingRecords = 0;
+    }
+
+    /***
+     * Writes the platform to the checkpoint of the log and empties the log. The snapshot is written to a temporary
+     * file and renamed over the old checkpoint, so a run stopping at any point leaves either checkpoint together with
+     * every record after it. All recorded commands must have been applied to the platform.
+     * @param platform The platform to be written.
+     * @param sequence The sequence number of the last applied command.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void checkpoint(Platform platform, long sequence) throws IOException{
+        commit(); // the records stay on the disk until the checkpoint replacing them is
+        Path temporary = Paths.get(checkpointPath + ".tmp");
+        Snapshot.write(platform, temporary.toString(), sequence);
+        Files.move(temporary, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSequence = sequence;
+        truncate();
+    }
+
+    /***
+     * Empties the log and deletes its checkpoint once the run has finished and its output is complete, so running
+     * again on the same input, or on another one, starts from the beginning. The records go first, so a run stopping
+     * midway leaves either the checkpoint alone, which is resumed like any checkpoint, or nothing.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void clear() throws IOException{
+        truncate();
+        Files.deleteIfExists(checkpointPath);
+        checkpointSequence = 0;
+        channel.truncate(0); // the next run starts the log for its own input
+        channel.force(true);
+    }
+
+    /***
+     * Drops all records, written or not, and keeps the header.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void truncate() throws IOException{
+        buffer.clear();
+        pendingRecords = 0;
+        recordsSinceCheckpoint = 0;
+        channel.truncate(logHeaderSize);
+        channel.position(logHeaderSize);
+        channel.force(true);
+    }
+
+    /***
+     * Forces the remaining records to the disk and closes the log file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close() throws IOException{
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /***
+     * A channel giving the raw lines of a series of records, each followed by a line break, so they can be parsed
+     * like an input file.
+     */
+    private static class RecordLines implements ReadableByteChannel {
+        private ByteBuffer records; // positioned at the next unread byte
+        private int lineRemaining; // bytes of the current line not given yet
+        private boolean inRecord; // whether the line break and the checksum of the current record are still ahead
+
+        /***
+         * Constructor to read the lines of the records between the position and the limit of a buffer.
+         * @param records The buffer holding valid records.
+         */
+        RecordLines(ByteBuffer records){
+            this.records = records;
+        }
+
+        @Override
+        public int read(ByteBuffer destination){
+            int count = 0;
+            while (destination.hasRemaining()){
+                if (lineRemaining > 0){
+                    int n = Math.min(lineRemaining, destination.remaining());
+                    int limit = records.limit();
+                    records.limit(records.position() + n);
+                    destination.put(records);
+                    records.limit(limit);
+                    lineRemaining -= n;
+                    count += n;
+                } else if (inRecord){
+                    destination.put((byte) '\n');
+                    records.position(records.position() + TRAILER_SIZE);
+                    inRecord = false;
+                    count++;
+                } else if (records.hasRemaining()){
+                    lineRemaining = records.getInt();
+                    records.getLong(); // the sequence number is not needed for replaying
+                    inRecord = true;
+                } else {
+                    break;
+                }
+            }
+            return count == 0 ? -1 : count;
+        }
+
+        @Override
+        public boolean isOpen(){
+            return true;
+        }
+
+        @Override
+        public void close(){
+            // the records are owned by the write-ahead log
+        }
+    }
+}